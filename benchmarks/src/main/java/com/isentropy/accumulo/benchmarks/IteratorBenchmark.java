@@ -0,0 +1,124 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.SortedMapIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.isentropy.accumulo.collections.AccumuloSortedMap;
+import com.isentropy.accumulo.collections.io.FixedPointSerde;
+import com.isentropy.accumulo.collections.io.SerDe;
+import com.isentropy.accumulo.iterators.MapChecksumAggregateIterator;
+import com.isentropy.accumulo.iterators.RegexFilter;
+import com.isentropy.accumulo.iterators.SamplingFilter;
+import com.isentropy.accumulo.iterators.StatsAggregateIterator;
+
+/**
+ * time to scan a tablet's worth of entries through each server-side iterator, 
+ * using an in-memory SortedMapIterator as the source so no tablet server is involved
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class IteratorBenchmark {
+	@Param({"SamplingFilter-sha256","SamplingFilter-murmur64","RegexFilter","StatsAggregateIterator","MapChecksumAggregateIterator"})
+	public String iterator;
+	@Param({"100000"})
+	public int entries;
+
+	TreeMap<Key,Value> data;
+	Map<String,String> options;
+
+	@Setup
+	public void setup(){
+		SerDe serde = new FixedPointSerde();
+		data = new TreeMap<Key,Value>();
+		for(long i=0;i<entries;i++){
+			data.put(new Key(serde.serialize(i),"d".getBytes(),"v".getBytes(),new byte[0],1), new Value(serde.serialize(2*i)));
+		}
+		options = new HashMap<String,String>();
+		options.put(AccumuloSortedMap.OPT_KEY_SERDE, FixedPointSerde.class.getName());
+		options.put(AccumuloSortedMap.OPT_VALUE_INPUT_SERDE, FixedPointSerde.class.getName());
+		if(iterator.startsWith("SamplingFilter")){
+			options.put(SamplingFilter.OPT_FROMFRACTION, "0");
+			options.put(SamplingFilter.OPT_TOFRACTION, "0.01");
+			options.put(SamplingFilter.OPT_RANDOMSEED, "benchmark");
+			options.put(SamplingFilter.OPT_HASH, iterator.substring(iterator.indexOf('-')+1));
+		}
+		else if(iterator.equals("RegexFilter")){
+			options.put(RegexFilter.OPT_KEYREGEX, "1.*5");
+		}
+	}
+
+	protected SortedKeyValueIterator<Key,Value> newIterator(){
+		if(iterator.startsWith("SamplingFilter"))
+			return new SamplingFilter();
+		if(iterator.equals("RegexFilter"))
+			return new RegexFilter();
+		if(iterator.equals("StatsAggregateIterator"))
+			return new StatsAggregateIterator();
+		if(iterator.equals("MapChecksumAggregateIterator"))
+			return new MapChecksumAggregateIterator();
+		throw new IllegalArgumentException(iterator);
+	}
+
+	@Benchmark
+	public int scan(Blackhole bh) throws Exception{
+		SortedKeyValueIterator<Key,Value> it = newIterator();
+		it.init(new SortedMapIterator(data), options, null);
+		it.seek(new Range(), Collections.<ByteSequence>emptySet(), false);
+		int n = 0;
+		while(it.hasTop()){
+			bh.consume(it.getTopKey());
+			bh.consume(it.getTopValue());
+			it.next();
+			n++;
+		}
+		return n;
+	}
+}
@@ -0,0 +1,155 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.ZooKeeperInstance;
+import org.apache.accumulo.core.client.mock.MockInstance;
+import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.minicluster.MiniAccumuloCluster;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.isentropy.accumulo.collections.AccumuloSortedMap;
+
+/**
+ * get, put and importAll against MockInstance or a MiniAccumuloCluster. 
+ * the map is preloaded with keys [0, preloaded), and writes overwrite keys in that range so the table size is stable.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MapBenchmark {
+	public static final int IMPORT_BATCH = 1000;
+
+	@Param({"mock","minicluster"})
+	public String backend;
+	@Param({"10000"})
+	public int preloaded;
+
+	MiniAccumuloCluster mac;
+	File macDir;
+	AccumuloSortedMap<Long,Long> map;
+
+	@State(Scope.Thread)
+	public static class Keys{
+		Random rand = new Random();
+		long next(int bound){
+			return rand.nextInt(bound);
+		}
+	}
+
+	/**
+	 * entries (from, 2*from), (from+1, 2*(from+1)), ...
+	 */
+	protected static Iterator<Entry<Long,Long>> entries(final long from, final int count){
+		return new Iterator<Entry<Long,Long>>(){
+			long next = from;
+			@Override
+			public boolean hasNext() {
+				return next < from + count;
+			}
+			@Override
+			public Entry<Long, Long> next() {
+				long k = next++;
+				return new AbstractMap.SimpleImmutableEntry<Long,Long>(k, 2*k);
+			}
+		};
+	}
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception{
+		Connector c;
+		if(backend.equals("minicluster")){
+			macDir = Files.createTempDirectory("mapbenchmark").toFile();
+			mac = new MiniAccumuloCluster(macDir, "secret");
+			mac.start();
+			c = new ZooKeeperInstance(mac.getInstanceName(), mac.getZooKeepers()).getConnector("root", new PasswordToken("secret"));
+		}
+		else{
+			c = new MockInstance().getConnector("root", new PasswordToken());
+		}
+		map = new AccumuloSortedMap<Long,Long>(c,"mapbenchmark");
+		map.importAll(entries(0,preloaded));
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception{
+		if(mac != null){
+			mac.stop();
+			deleteRecursively(macDir.toPath());
+		}
+	}
+
+	protected static void deleteRecursively(Path dir) throws IOException{
+		Iterator<Path> it = Files.walk(dir).sorted(Comparator.reverseOrder()).iterator();
+		while(it.hasNext())
+			Files.delete(it.next());
+	}
+
+	@Benchmark
+	public Long get(Keys k){
+		return map.get(k.next(preloaded));
+	}
+	@Benchmark
+	public Long put(Keys k){
+		long key = k.next(preloaded);
+		return map.put(key, 2*key);
+	}
+	@Benchmark
+	public void putWithoutGet(Keys k){
+		long key = k.next(preloaded);
+		map.putWithoutGet(key, 2*key);
+	}
+	@Benchmark
+	@OperationsPerInvocation(IMPORT_BATCH)
+	public long importAll(Keys k){
+		return map.importAll(entries(k.next(preloaded - IMPORT_BATCH), IMPORT_BATCH));
+	}
+}
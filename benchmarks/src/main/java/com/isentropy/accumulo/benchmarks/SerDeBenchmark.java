@@ -0,0 +1,162 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.isentropy.accumulo.collections.io.BufferedSerDe;
+import com.isentropy.accumulo.collections.io.SerDe;
+
+/**
+ * serialize and deserialize throughput of each SerDe, for numbers and strings
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerDeBenchmark {
+
+	protected static SerDe newSerde(String simpleName) throws ReflectiveOperationException{
+		return (SerDe) Class.forName(SerDe.class.getPackage().getName()+"."+simpleName).newInstance();
+	}
+
+	@State(Scope.Thread)
+	public static class Numbers{
+		@Param({"FixedPointSerde","JavaSerializationSerde","LongBinarySerde","LongKeySerde","IntKeySerde"})
+		public String serde;
+		SerDe s;
+		Integer value = 123456789;
+		byte[] serialized;
+
+		@Setup
+		public void setup() throws ReflectiveOperationException{
+			s = newSerde(serde);
+			serialized = s.serialize(value);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Doubles{
+		@Param({"FixedPointSerde","JavaSerializationSerde","DoubleKeySerde","FloatKeySerde"})
+		public String serde;
+		SerDe s;
+		Double value = -12345.6789;
+		byte[] serialized;
+
+		@Setup
+		public void setup() throws ReflectiveOperationException{
+			s = newSerde(serde);
+			serialized = s.serialize(value);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Strings{
+		@Param({"FixedPointSerde","JavaSerializationSerde"})
+		public String serde;
+		@Param({"16","256"})
+		public int length;
+		SerDe s;
+		String value;
+		byte[] serialized;
+
+		@Setup
+		public void setup() throws ReflectiveOperationException{
+			s = newSerde(serde);
+			StringBuilder sb = new StringBuilder();
+			for(int i=0;i<length;i++)
+				sb.append((char) ('a' + i%26));
+			value = sb.toString();
+			serialized = s.serialize(value);
+		}
+	}
+
+	@State(Scope.Thread)
+	public static class Buffered{
+		@Param({"FixedPointSerde","LongKeySerde"})
+		public String serde;
+		BufferedSerDe s;
+		Long value = 1234567890123l;
+		ByteBuffer buf = ByteBuffer.allocate(1024);
+		byte[] serialized;
+		int length;
+
+		@Setup
+		public void setup() throws ReflectiveOperationException{
+			s = (BufferedSerDe) newSerde(serde);
+			// deserialize from an offset, as from Key.getRowData()
+			byte[] b = s.serialize(value);
+			length = b.length;
+			serialized = new byte[64];
+			System.arraycopy(b, 0, serialized, 7, length);
+		}
+	}
+
+	@Benchmark
+	public byte[] serializeInteger(Numbers n){
+		return n.s.serialize(n.value);
+	}
+	@Benchmark
+	public Object deserializeInteger(Numbers n){
+		return n.s.deserialize(n.serialized);
+	}
+	@Benchmark
+	public byte[] serializeDouble(Doubles d){
+		return d.s.serialize(d.value);
+	}
+	@Benchmark
+	public Object deserializeDouble(Doubles d){
+		return d.s.deserialize(d.serialized);
+	}
+	@Benchmark
+	public byte[] serializeString(Strings s){
+		return s.s.serialize(s.value);
+	}
+	@Benchmark
+	public Object deserializeString(Strings s){
+		return s.s.deserialize(s.serialized);
+	}
+	@Benchmark
+	public int serializeToBuffer(Buffered b){
+		b.buf.clear();
+		return b.s.serialize(b.value, b.buf);
+	}
+	@Benchmark
+	public Object deserializeFromOffset(Buffered b){
+		return b.s.deserialize(b.serialized, 7, b.length);
+	}
+}
@@ -24,8 +24,12 @@ package com.isentropy.accumulo.collections;
 
 import static com.isentropy.accumulo.collections.ForeignKey.resolve;
 
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
@@ -37,49 +41,93 @@ import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.HashSet;
 import java.util.Set;
+import java.util.Spliterator;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.Map.Entry;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
+import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.BatchWriter;
 import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.ConditionalWriter;
+import org.apache.accumulo.core.client.ConditionalWriterConfig;
 import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.MutationsRejectedException;
 import org.apache.accumulo.core.client.TableExistsException;
 import org.apache.accumulo.core.client.admin.TableOperations;
+import org.apache.accumulo.core.conf.AccumuloConfiguration;
+import org.apache.accumulo.core.client.TableDeletedException;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.security.Authorizations;
 import org.apache.accumulo.core.security.ColumnVisibility;
 import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.ScannerBase;
+import org.apache.accumulo.core.data.ArrayByteSequence;
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Condition;
+import org.apache.accumulo.core.data.ConditionalMutation;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Mutation;
 import org.apache.accumulo.core.data.Range;
 import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.file.FileOperations;
+import org.apache.accumulo.core.file.FileSKVWriter;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.IteratorUtil.IteratorScope;
 import org.apache.accumulo.core.iterators.user.VersioningIterator;
 import org.apache.accumulo.core.iterators.user.AgeOffFilter;
+import org.apache.accumulo.core.iterators.user.SummingCombiner;
+import org.apache.accumulo.core.iterators.Combiner;
+import org.apache.accumulo.core.iterators.LongCombiner;
 import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.Text;
+import org.reactivestreams.Publisher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.isentropy.accumulo.collections.io.BufferedSerDe;
+import com.isentropy.accumulo.collections.io.DoubleSerDe;
 import com.isentropy.accumulo.collections.io.FixedPointSerde;
 import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.collections.io.LongSerDe;
 import com.isentropy.accumulo.collections.io.SerDe;
-import com.isentropy.accumulo.collections.mappers.CountsDerivedMapper;
+import com.isentropy.accumulo.collections.mappers.RowQuantilesMapper;
 import com.isentropy.accumulo.collections.mappers.RowStatsMapper;
 import com.isentropy.accumulo.collections.transform.KeyValueTransformer;
 import com.isentropy.accumulo.iterators.AggregateIterator;
 import com.isentropy.accumulo.iterators.KeyToKeyMapTransformer;
+import com.isentropy.accumulo.iterators.LastRowIterator;
 import com.isentropy.accumulo.iterators.RegexFilter;
 import com.isentropy.accumulo.iterators.SamplingFilter;
 import com.isentropy.accumulo.iterators.StatsAggregateIterator;
+import com.isentropy.accumulo.iterators.ValueMatchFilter;
 import com.isentropy.accumulo.util.KeyValue;
+import com.isentropy.accumulo.util.NearCache;
+import com.isentropy.accumulo.util.QuantileSketch;
 import com.isentropy.accumulo.util.Util;
 /**
  * IMPORTANT: 	 
@@ -94,6 +142,17 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 
 	private static final int DEFAULT_RANDSEED_LENGTH=20;
 	public static long DEFAULT_WAIT_MS = 1000;
+	public static final int DEFAULT_BATCHSCANNER_THREADS = 10;
+	public static final int DEFAULT_WRITE_STRIPES = 1;
+	public static final int DEFAULT_JOIN_PAGE_SIZE = 1000;
+	public static final long DEFAULT_GROUPCOMMIT_LATENCY_MS = 10;
+	public static final long DEFAULT_GROUPCOMMIT_BYTES = 1024*1024;
+	public static final int DEFAULT_IMPORT_CHUNK_SIZE = 1000;
+	public static final int DEFAULT_PUBLISHER_BATCH_SIZE = 1000;
+	public static final int DEFAULT_PUBLISHER_READAHEAD = 2000;
+	public static final long DEFAULT_BULKIMPORT_RUN_BYTES = 64*1024*1024;
+	// keys that don't fit are serialized to a new array instead
+	public static final int SERIALIZATION_BUFFER_BYTES = 1024;
 	// this is the priority that the first stacked iterator will be be added at
 	protected static final int DERIVEDMAP_ITERATOR_PRIORITY_MIN = 100;
 	protected static final String ITERATOR_NAME_AGEOFF = "ageoff";
@@ -104,6 +163,25 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 
 
 	protected static final int ITERATOR_PRIORITY_VERSIONING = 20;
+	// addScanIterator() copies the setting, so one instance is shared
+	private static final IteratorSetting VERSIONING_SETTING = new IteratorSetting(ITERATOR_PRIORITY_VERSIONING,ITERATOR_NAME_VERSIONING+ITERATOR_PRIORITY_VERSIONING,VersioningIterator.class);
+	static{
+		VersioningIterator.setMaxVersions(VERSIONING_SETTING, 1);
+	}
+	/**
+	 * in counted mode, the map size is kept in a sibling table named getTable()+SIZE_TABLE_SUFFIX
+	 */
+	public static final String SIZE_TABLE_SUFFIX = "_size";
+	protected static final String ITERATOR_NAME_SIZE_COUNTER = "sizecounter";
+	private static final byte[] SIZE_ROW = "size".getBytes(StandardCharsets.UTF_8);
+	/**
+	 * value index tables are named getTable()+INDEX_TABLE_INFIX+index name, see addValueIndex()
+	 */
+	public static final String INDEX_TABLE_INFIX = "_idx_";
+	/**
+	 * the name of the index created by addValueIndex(), which indexes whole values
+	 */
+	public static final String VALUE_INDEX = "value";
 	public static Logger log = LoggerFactory.getLogger(AccumuloSortedMap.class);
 	/*
 	 * iterators used in deriveMap will be passed SerDe classname info via these iterator params
@@ -182,6 +260,22 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			return parent.iterator();
 		}
 
+		@Override
+		public Spliterator<java.util.Map.Entry<K, V>> spliterator() {
+			final Comparator<? super K> keyComparator = parent.comparator();
+			return parent.tabletSpliterator(new Function<Entry<K,V>,Entry<K,V>>(){
+				@Override
+				public Entry<K, V> apply(Entry<K, V> e) {
+					return e;
+				}
+			}, new Comparator<Entry<K,V>>(){
+				@Override
+				public int compare(Entry<K, V> a, Entry<K, V> b) {
+					return keyComparator.compare(a.getKey(), b.getKey());
+				}
+			});
+		}
+
 		@Override
 		public boolean remove(Object o) {
 			throw new UnsupportedOperationException();
@@ -239,7 +333,7 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 
 				@Override
 				public K getKey() {
-					return (K) getKeySerde().deserialize(n.getKey().getRowData().toArray());
+					return (K) Util.deserialize(getKeySerde(),n.getKey().getRowData());
 				}
 
 				@Override
@@ -259,6 +353,137 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	}
 
 
+	/**
+	 * Spliterator over the map that splits by tablet. each split scans its own tablet ranges with its own Scanner, 
+	 * so a parallel stream scans tablets concurrently. splitting stops once traversal has started.
+	 */
+	protected class TabletSpliterator<T> implements Spliterator<T>{
+		private final List<Range> ranges;
+		private final Function<Entry<K,V>,T> projection;
+		private final Comparator<? super T> comparator;
+		private int nextRange = 0;
+		private Iterator<Entry<K,V>> current = null;
+
+		/**
+		 * @param projection maps entries to the elements of the Spliterator
+		 * @param comparator the order of the projected elements, or null if they aren't sorted
+		 */
+		protected TabletSpliterator(List<Range> ranges,Function<Entry<K,V>,T> projection,Comparator<? super T> comparator){
+			this.ranges = ranges;
+			this.projection = projection;
+			this.comparator = comparator;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super T> action) {
+			while(current == null || !current.hasNext()){
+				if(nextRange >= ranges.size())
+					return false;
+				try {
+					Scanner s = getScanner();
+					s.setRange(ranges.get(nextRange++));
+					current = entryIterator(s.iterator());
+				} catch (TableNotFoundException e) {
+					log.error(e.getMessage());
+					throw new RuntimeException(e);
+				}
+			}
+			action.accept(projection.apply(current.next()));
+			return true;
+		}
+
+		@Override
+		public Spliterator<T> trySplit() {
+			int remaining = ranges.size() - nextRange;
+			if(current != null || remaining < 2)
+				return null;
+			int mid = nextRange + remaining/2;
+			Spliterator<T> prefix = new TabletSpliterator<T>(new ArrayList<Range>(ranges.subList(nextRange, mid)),projection,comparator);
+			nextRange = mid;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return Long.MAX_VALUE;
+		}
+
+		@Override
+		public int characteristics() {
+			int c = ORDERED | NONNULL;
+			if(comparator != null)
+				c |= SORTED | DISTINCT;
+			return c;
+		}
+
+		@Override
+		public Comparator<? super T> getComparator() {
+			if(comparator == null)
+				throw new IllegalStateException();
+			return comparator;
+		}
+	}
+
+	/**
+	 * @see TabletSpliterator
+	 */
+	protected <T> Spliterator<T> tabletSpliterator(Function<Entry<K,V>,T> projection,Comparator<? super T> comparator){
+		try {
+			return new TabletSpliterator<T>(tabletRanges(),projection,comparator);
+		} catch (TableNotFoundException | AccumuloSecurityException | AccumuloException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * a sequential stream of the map's entries in key order
+	 */
+	public Stream<Entry<K,V>> stream(){
+		return StreamSupport.stream(entrySet().spliterator(), false);
+	}
+
+	/**
+	 * a parallel stream of the map's entries, split by tablet
+	 */
+	public Stream<Entry<K,V>> parallelStream(){
+		return StreamSupport.stream(entrySet().spliterator(), true);
+	}
+
+	/**
+	 * a reactive-streams Publisher of the map's entries in key order, see ScanPublisher. 
+	 * each subscription scans the map with its own Scanner.
+	 * 
+	 * @param batchSize the Scanner batch size
+	 * @param readAhead the maximum number of entries fetched ahead of the Subscriber's demand
+	 */
+	public Publisher<Entry<K,V>> publisher(final int batchSize,int readAhead){
+		return new ScanPublisher<Entry<K,V>>(new Callable<Iterator<Entry<K,V>>>(){
+			@Override
+			public Iterator<Entry<K, V>> call() throws Exception {
+				Scanner s = getScanner();
+				s.setBatchSize(batchSize);
+				return entryIterator(s.iterator());
+			}
+		}, readAhead);
+	}
+	public Publisher<Entry<K,V>> publisher(){
+		return publisher(DEFAULT_PUBLISHER_BATCH_SIZE,DEFAULT_PUBLISHER_READAHEAD);
+	}
+
+	/**
+	 * a reactive-streams Publisher of the entries found by getBatchIterator(keys), in no particular order. 
+	 * the BatchScanner is closed if the subscription is cancelled.
+	 */
+	public Publisher<Entry<K,V>> batchPublisher(final Collection<? extends K> keys,int readAhead){
+		return new ScanPublisher<Entry<K,V>>(new Callable<Iterator<Entry<K,V>>>(){
+			@Override
+			public Iterator<Entry<K, V>> call() throws Exception {
+				return getBatchIterator(keys);
+			}
+		}, readAhead);
+	}
+
 	protected class KeySetIterator implements Iterator<K>{
 		Iterator<java.util.Map.Entry<K, V>> wrapped;
 		public KeySetIterator(Iterator<java.util.Map.Entry<K, V>> wrapped){
@@ -290,6 +515,13 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			return (V) parent.get(key);
 		}
 		
+		@Override
+		protected Entry<Key, Value> getEntry(Range r) {
+			if(!range.contains(r.getStartKey()))
+				return null;
+			return parent.getEntry(r);
+		}
+
 		@Override
 		public Iterator<V> getAll(Object key) {
 			if(!range.contains(getKey(key)))
@@ -297,6 +529,16 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			return (Iterator<V>) parent.getAll(key);
 		}
 		
+		@Override
+		public Iterator<Entry<K,V>> getBatchIterator(Collection<? extends K> keys) {
+			List<K> inRange = new ArrayList<K>(keys.size());
+			for(K k : keys){
+				if(k != null && range.contains(getKey(k)))
+					inRange.add(k);
+			}
+			return (Iterator<Entry<K,V>>) (Iterator) parent.getBatchIterator(inRange);
+		}
+
 		@Override
 		public Scanner getMultiScanner() throws TableNotFoundException {
 			Scanner s = parent.getMultiScanner();
@@ -309,6 +551,14 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			s.setRange(range);
 			return s;
 		}
+		@Override
+		protected BatchScanner getBatchScanner(int numThreads) throws TableNotFoundException {
+			return parent.getBatchScanner(numThreads);
+		}
+		@Override
+		protected BatchScanner getMultiBatchScanner(int numThreads) throws TableNotFoundException {
+			return parent.getMultiBatchScanner(numThreads);
+		}
 	}
 
 	protected class ValueSetIterator implements Iterator<V>{
@@ -328,8 +578,63 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		}
 
 	}
-	protected BatchWriter batchWriter;
+	/**
+	 * iterates the entries found by a BatchScanner lookup. Keys are the objects that were passed in to getBatchIterator(),
+	 * not the deserialized rows, so callers can match results against their own keys. 
+	 * The BatchScanner is closed when the iterator is exhausted.
+	 */
+	protected class BatchEntryIterator implements Iterator<java.util.Map.Entry<K, V>>, AutoCloseable{
+		final BatchScanner scanner;
+		final Iterator<Entry<Key, Value>> wrapped;
+		final Map<ByteSequence,K> rowToKey;
+		boolean closed = false;
+		protected BatchEntryIterator(BatchScanner scanner, Map<ByteSequence,K> rowToKey){
+			this.scanner = scanner;
+			this.rowToKey = rowToKey;
+			wrapped = scanner.iterator();
+		}
+		@Override
+		public boolean hasNext() {
+			if(closed)
+				return false;
+			if(wrapped.hasNext())
+				return true;
+			close();
+			return false;
+		}
+
+		@Override
+		public void close() {
+			if(!closed)
+				scanner.close();
+			closed = true;
+		}
+
+		@Override
+		public java.util.Map.Entry<K, V> next() {
+			if(!hasNext()){
+				throw new NoSuchElementException();
+			}
+			Entry<Key,Value> n = wrapped.next();
+			return new AbstractMap.SimpleImmutableEntry<K,V>(rowToKey.get(n.getKey().getRowData()),deserializeValue(n.getValue().get()));
+		}
+	}
+	// writes are striped over BatchWriters by thread, see setWriteStripes(). batchWriters[i] is guarded by stripeLocks[i]
+	private BatchWriter[] batchWriters = new BatchWriter[1];
+	private Object[] stripeLocks = {new Object()};
 	private BatchWriterConfig batchWriterConfig = getDefaultBatchWriterConfig();
+	private GroupCommitWriter groupCommitWriter;
+	private ConditionalWriter conditionalWriter;
+	private long groupCommitLatencyMs = DEFAULT_GROUPCOMMIT_LATENCY_MS;
+	private long groupCommitBytes = DEFAULT_GROUPCOMMIT_BYTES;
+	private long bulkImportRunBytes = DEFAULT_BULKIMPORT_RUN_BYTES;
+	private volatile Entry<byte[],ColumnVisibility> parsedColumnVisibility;
+	private static final ThreadLocal<ByteBuffer> serializationBuffer = new ThreadLocal<ByteBuffer>(){
+		@Override
+		protected ByteBuffer initialValue() {
+			return ByteBuffer.allocate(SERIALIZATION_BUFFER_BYTES);
+		}
+	};
 	//data
 	private byte[] colfam="d".getBytes(StandardCharsets.UTF_8);
 	//value
@@ -341,6 +646,27 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	private Connector conn;
 	private SerDe keySerde = new FixedPointSerde();
 	private boolean readOnly = false;
+	private int batchScannerThreads = DEFAULT_BATCHSCANNER_THREADS;
+	private NearCache<ByteSequence,Entry<Key,Value>> nearCache = null;
+	// entry timeout known to this client. cached entries older than this have aged off the table
+	private long nearCacheTimeOutMs = -1;
+	// non null in counted mode
+	private volatile String sizeTable = null;
+	private final Map<String,ValueIndex<K,V>> valueIndexes = new ConcurrentHashMap<String,ValueIndex<K,V>>();
+	private static class PooledScanner{
+		final Scanner scanner;
+		final int generation;
+		// the id of the table when the Scanner was made. another client may recreate the table under a new id
+		final String tableId;
+		PooledScanner(Scanner scanner,int generation,String tableId){
+			this.scanner = scanner;
+			this.generation = generation;
+			this.tableId = tableId;
+		}
+	}
+	private final ThreadLocal<PooledScanner> pointScanner = new ThreadLocal<PooledScanner>();
+	private volatile int scannerGeneration = 0;
+	private BatchWriter sizeWriter = null;
 	
 	/**
 	 *  clearable is flag that permits clear() and delete(), which wipe the entire table.
@@ -388,16 +714,83 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	}
 	
 	protected void addPutMutation(K key, V value, BatchWriter bw) throws MutationsRejectedException {
-		Mutation m = new Mutation(getKey(key).getRowData().toArray());
-		m.put(getColumnFamily(), getColumnQualifier(),new ColumnVisibility(getColumnVisibility()), getValueSerde().serialize(value));
-		bw.addMutation(m);		
+		bw.addMutation(makePutMutation(key,value));		
 	}
 
 	
 	protected void addRemoveMutation(Object key, BatchWriter bw) throws MutationsRejectedException{
-		Mutation m = new Mutation(getKey(key).getRowData().toArray());
-		m.putDelete(getColumnFamily(), getColumnQualifier(),new ColumnVisibility(getColumnVisibility()));
-		bw.addMutation(m);
+		bw.addMutation(makeRemoveMutation(key));
+	}
+
+	protected Mutation makePutMutation(K key, V value){
+		Mutation m = makeMutation(key);
+		m.put(getColumnFamily(), getColumnQualifier(),getParsedColumnVisibility(), getValueSerde().serialize(value));
+		return m;
+	}
+
+	protected Mutation makeRemoveMutation(Object key){
+		Mutation m = makeMutation(key);
+		m.putDelete(getColumnFamily(), getColumnQualifier(),getParsedColumnVisibility());
+		return m;
+	}
+
+	private Mutation makeMutation(Object key){
+		return makeMutation(serializeKey(key));
+	}
+
+	private Mutation makeMutation(ByteBuffer row){
+		if(nearCache != null)
+			invalidateNearCache(new ArrayByteSequence(row.array(),0,row.limit()));
+		return new Mutation(row.array(),0,row.limit());
+	}
+
+	/**
+	 * serializes key into a reusable thread-local buffer if the key SerDe is a BufferedSerDe.
+	 * the returned buffer's contents are valid until the next call on this thread.
+	 * 
+	 * @return a buffer with the serialized key in array()[0,limit())
+	 */
+	protected ByteBuffer serializeKey(Object key){
+		SerDe serde = getKeySerde();
+		if(serde instanceof BufferedSerDe){
+			ByteBuffer buf = serializationBuffer.get();
+			buf.clear();
+			if(((BufferedSerDe) serde).serialize(key, buf) >= 0){
+				buf.flip();
+				return buf;
+			}
+		}
+		return ByteBuffer.wrap(serde.serialize(key));
+	}
+
+	/**
+	 * serializes key without boxing if the key SerDe is a LongSerDe
+	 * @see #serializeKey(Object)
+	 */
+	protected ByteBuffer serializeLongKey(long key){
+		SerDe serde = getKeySerde();
+		if(serde instanceof LongSerDe){
+			ByteBuffer buf = serializationBuffer.get();
+			buf.clear();
+			if(((LongSerDe) serde).serializeLong(key, buf) >= 0){
+				buf.flip();
+				return buf;
+			}
+		}
+		return serializeKey(key);
+	}
+
+	/**
+	 * parsing a ColumnVisibility allocates, so the parsed form is kept until getColumnVisibility() changes
+	 */
+	protected ColumnVisibility getParsedColumnVisibility(){
+		byte[] cv = getColumnVisibility();
+		Entry<byte[],ColumnVisibility> parsed = parsedColumnVisibility;
+		if(parsed == null || parsed.getKey() != cv){
+			parsed = new AbstractMap.SimpleImmutableEntry<byte[],ColumnVisibility>(cv,new ColumnVisibility(cv));
+			parsedColumnVisibility = parsed;
+		}
+		return parsed.getValue();
 	}
 
 	
@@ -410,7 +803,9 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	public void cacheRemove(K key) throws MutationsRejectedException {
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
-		addRemoveMutation(key, getBatchWriter());
+		synchronized(stripeLocks[writeStripe()]){
+			addRemoveMutation(key, getBatchWriter());
+		}
 	}
 	/**
 	 * adds put mutation to BatchWriter, but doesn't flush it.
@@ -421,7 +816,9 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	public void cachePut(K key, V value) throws MutationsRejectedException {
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
-		addPutMutation(key,value, getBatchWriter());
+		synchronized(stripeLocks[writeStripe()]){
+			addPutMutation(key,value, getBatchWriter());
+		}
 	}
 
 	/**
@@ -463,8 +860,14 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		if(!isClearable())
 			throw new UnsupportedOperationException("must set setClearable(true) before calling clear()");
 		try {
+			boolean counted = isCounted();
+			List<ValueIndex<K,V>> indexes = new ArrayList<ValueIndex<K,V>>(valueIndexes.values());
 			delete();
 			createTable();
+			if(counted)
+				setCounted(true);
+			for(ValueIndex<K,V> index : indexes)
+				addValueIndex(index.getName(), index.getExtractor(), index.getFieldSerde());
 		} catch (Exception e) {
 			log.error(e.getMessage());
 			throw new RuntimeException(e);
@@ -481,6 +884,88 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		};
 	}
 
+	/**
+	 * Atomically sets the value of key to newValue if its current value is expectedValue. 
+	 * The check and the write happen on the tablet server in one round trip using Accumulo's ConditionalWriter. 
+	 * Values are compared by their serialized bytes.
+	 * 
+	 * @param key
+	 * @param expectedValue the expected current value, or null if key is expected to be absent 
+	 * @param newValue the new value, or null to remove key
+	 * @return true if the write was applied
+	 */
+	public boolean compareAndSet(K key, V expectedValue, V newValue){
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		ByteSequence row = getKey(key).getRowData();
+		invalidateNearCache(row);
+		ColumnVisibility cv = getParsedColumnVisibility();
+		Condition cond = new Condition(getColumnFamily(), getColumnQualifier()).setVisibility(cv);
+		// a condition without a value checks that the column is absent
+		if(expectedValue != null)
+			cond.setValue(getValueSerde().serialize(expectedValue));
+		ConditionalMutation cm = new ConditionalMutation(row.toArray(), cond);
+		if(newValue == null)
+			cm.putDelete(getColumnFamily(), getColumnQualifier(), cv);
+		else
+			cm.put(getColumnFamily(), getColumnQualifier(), cv, getValueSerde().serialize(newValue));
+		try{
+			ConditionalWriter.Status status = getConditionalWriter().write(cm).getStatus();
+			switch(status){
+			case ACCEPTED:
+				invalidateNearCache(row);
+				if(expectedValue == null && newValue != null)
+					adjustSize(1);
+				else if(expectedValue != null && newValue == null)
+					adjustSize(-1);
+				updateIndexes(key, expectedValue, newValue);
+				return true;
+			case REJECTED: return false;
+			default: throw new AccumuloException("conditional write to "+getTable()+" returned status "+status);
+			}
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		while(true){
+			V prev = get(key);
+			V next = remappingFunction.apply(key, prev);
+			if(prev == null && next == null)
+				return null;
+			if(compareAndSet(key, prev, next))
+				return next;
+		}
+	}
+
+	@Override
+	public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+		V prev = get(key);
+		if(prev != null)
+			return prev;
+		V next = mappingFunction.apply(key);
+		if(next == null)
+			return null;
+		prev = putIfAbsent(key, next);
+		return prev == null ? next : prev;
+	}
+
+	@Override
+	public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+		while(true){
+			V prev = get(key);
+			if(prev == null)
+				return null;
+			V next = remappingFunction.apply(key, prev);
+			if(compareAndSet(key, prev, next))
+				return next;
+		}
+	}
+
 	protected Map<String,String> configureSerdes(Map<String,String> opts,SerDe output_value_serde){
 		if(opts == null)
 			opts = new HashMap<String,String>();
@@ -498,26 +983,32 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		return get(key) != null;
 	}
 	/**
-	 * runs through the entire table locally. slow.
-	 * TODO maybe add iterator for this
+	 * the value is serialized once and matched by ValueMatchFilter on the tablet servers, 
+	 * over a BatchScanner of all tablets in range. only matches are sent back, and 
+	 * the BatchScanner is closed at the first one.
 	 */
 	@Override
 	public boolean containsValue(Object value) {
-		Scanner	s;
+		BatchScanner bs = null;
 		try {
-			s = getScanner();
-			Iterator<Entry<Key, Value>> it = s.iterator();
-			while(it.hasNext()){
-				Entry<Key, Value> e = it.next();
-				if(Arrays.equals(e.getValue().get(),getValueSerde().serialize(value))){
-					return true;
-				}
-			}
-			return false;
-		} catch (TableNotFoundException e) {
+			List<Range> ranges = tabletRanges();
+			if(ranges.isEmpty())
+				return false;
+			bs = getBatchScanner(getBatchScannerThreads());
+			bs.setRanges(ranges);
+			int prior = nextIteratorPriority();
+			IteratorSetting cfg = new IteratorSetting(prior,ValueMatchFilter.class.getSimpleName()+prior,ValueMatchFilter.class);
+			cfg.addOption(ValueMatchFilter.OPT_VALUE, Util.bytesToHex(getValueSerde().serialize(value)));
+			bs.addScanIterator(cfg);
+			return bs.iterator().hasNext();
+		} catch (TableNotFoundException | AccumuloSecurityException | AccumuloException e) {
 			log.error(e.getMessage());
 			throw new RuntimeException(e);
 		}
+		finally{
+			if(bs != null)
+				bs.close();
+		}
 	}
 	protected boolean createTable() throws AccumuloException, AccumuloSecurityException, TableExistsException{
 		log.info("Creating Accumulo table: "+getTable());
@@ -530,11 +1021,22 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			throw new UnsupportedOperationException();
 		if(!isClearable())
 			throw new UnsupportedOperationException("must set setClearable(true) before calling delete()");
-		if(batchWriter != null)
-			batchWriter.close();
-		batchWriter = null;
+		closeBatchWriters();
+		closeGroupCommitWriter();
+		closeConditionalWriter();
+		if(nearCache != null)
+			nearCache.clear();
 		log.warn("Deleting Accumulo table: "+getTable());
 		getConnector().tableOperations().delete(getTable());		
+		invalidatePooledScanners();
+		if(isCounted()){
+			closeSizeWriter();
+			if(isSizeTable(sizeTable))
+				getConnector().tableOperations().delete(sizeTable);
+			sizeTable = null;
+		}
+		for(String name : new ArrayList<String>(valueIndexes.keySet()))
+			dropValueIndex(name);
 	}
 
 	public IteratorStackedSubmap<K,?> derivedMapFromIterator(Class<? extends SortedKeyValueIterator<Key, Value>> iterator, Map<String,String> iterator_options, SerDe derivedMapValueSerde, boolean isAggregate){
@@ -606,15 +1108,37 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		return new BackingSet(parent);
 	}
 	
+	/**
+	 * reads only the first entry of the map, with a batch size of 1
+	 */
 	@Override
 	public K firstKey() {
-		return entrySet().iterator().next().getKey();
+		try {
+			Scanner s = getScanner();
+			s.setBatchSize(1);
+			Iterator<Entry<Key,Value>> it = s.iterator();
+			if(!it.hasNext())
+				throw new NoSuchElementException();
+			return (K) Util.deserialize(getKeySerde(), it.next().getKey().getRowData());
+		} catch (TableNotFoundException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
 	}
 	
 	public void flushCachedEdits() throws MutationsRejectedException{
-		BatchWriter bw = getBatchWriter();
-		if(bw != null)
-			bw.flush();
+		BatchWriter[] writers = batchWriters;
+		for(int i=0;i<writers.length;i++){
+			synchronized(stripeLocks[i]){
+				if(writers[i] != null)
+					writers[i].flush();
+			}
+		}
+		if(groupCommitWriter != null)
+			groupCommitWriter.flush();
+		// gets since cachePut()/cacheRemove() may have cached the values they replaced
+		if(nearCache != null)
+			nearCache.clear();
 	}
 
 	protected String formatDumpLine(Map.Entry<K,V> e){
@@ -653,22 +1177,160 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		}
 	}
 
+	/**
+	 * looks up many keys at once. The keys are serialized and fanned out over a BatchScanner 
+	 * with getBatchScannerThreads() threads, so this is much faster than repeated calls to get().
+	 * 
+	 * @param keys
+	 * @return a map of key->value for all keys that were found. Keys are the same objects that were passed in.
+	 */
+	public Map<K,V> getBatch(Collection<? extends K> keys){
+		Map<K,V> found = new HashMap<K,V>();
+		for(Iterator<Entry<K,V>> it = getBatchIterator(keys);it.hasNext();){
+			Entry<K,V> e = it.next();
+			found.put(e.getKey(), e.getValue());
+		}
+		return found;
+	}
+
+	/**
+	 * streaming version of getBatch(). Entries are returned in no particular order, and 
+	 * keys that are not in the map are skipped.
+	 * @param keys
+	 * @return
+	 */
+	public Iterator<Entry<K,V>> getBatchIterator(Collection<? extends K> keys){
+		Map<ByteSequence,K> rowToKey = new HashMap<ByteSequence,K>();
+		List<Range> ranges = new ArrayList<Range>(keys.size());
+		for(K key : keys){
+			if(key == null)
+				continue;
+			Range r = getRange(key);
+			// skip duplicate keys
+			if(rowToKey.put(r.getStartKey().getRowData(), key) == null)
+				ranges.add(r);
+		}
+		if(ranges.isEmpty())
+			return Collections.<Entry<K,V>>emptyIterator();
+		BatchScanner bs;
+		try {
+			bs = getBatchScanner(getBatchScannerThreads());
+		} catch (TableNotFoundException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+		bs.setRanges(ranges);
+		return new BatchEntryIterator(bs,rowToKey);
+	}
+
+	public int getBatchScannerThreads() {
+		return batchScannerThreads;
+	}
+
 
 	protected Authorizations getAuthorizations(){
 		return new Authorizations(colvis);
 	}
 
 
-	protected BatchWriter getBatchWriter(){
-		if(batchWriter == null){
+	protected synchronized GroupCommitWriter getGroupCommitWriter(){
+		if(groupCommitWriter == null){
 			try {
-				reinitBatchWriter();
-			} catch (Exception e) {
+				groupCommitWriter = new GroupCommitWriter(getConnector(), getTable(), getBatchWriterConfig(), groupCommitLatencyMs, groupCommitBytes, 
+						new GroupCommitWriter.CommitListener(){
+					@Override
+					public void committed(List<Object> attachments) {
+						applyAsyncWrites(attachments);
+					}
+				});
+			} catch (TableNotFoundException e) {
 				log.error(e.getMessage());
 				throw new RuntimeException(e);
 			}
 		}
-		return batchWriter;
+		return groupCommitWriter;
+	}
+
+	private synchronized void closeGroupCommitWriter() throws MutationsRejectedException{
+		if(groupCommitWriter != null)
+			groupCommitWriter.close();
+		groupCommitWriter = null;
+	}
+
+	protected synchronized ConditionalWriter getConditionalWriter() throws TableNotFoundException{
+		if(conditionalWriter == null)
+			conditionalWriter = getConnector().createConditionalWriter(getTable(), new ConditionalWriterConfig().setAuthorizations(getAuthorizations()));
+		return conditionalWriter;
+	}
+
+	private synchronized void closeConditionalWriter(){
+		if(conditionalWriter != null)
+			conditionalWriter.close();
+		conditionalWriter = null;
+	}
+
+	/**
+	 * @return the BatchWriter of the calling thread's stripe, see setWriteStripes()
+	 */
+	protected BatchWriter getBatchWriter(){
+		int i = writeStripe();
+		synchronized(stripeLocks[i]){
+			if(batchWriters[i] == null){
+				try {
+					reinitBatchWriter();
+				} catch (Exception e) {
+					log.error(e.getMessage());
+					throw new RuntimeException(e);
+				}
+			}
+			return batchWriters[i];
+		}
+	}
+
+	/**
+	 * @return the calling thread's write stripe
+	 */
+	protected int writeStripe(){
+		return (int) (Thread.currentThread().getId() % batchWriters.length);
+	}
+
+	public int getWriteStripes(){
+		return batchWriters.length;
+	}
+
+	/**
+	 * in concurrent mode, writes are spread over n BatchWriters, chosen by thread. put(), remove() and 
+	 * the other flushing writes hold only their stripe's lock while they add, flush, and after a rejected 
+	 * flush replace their BatchWriter, so threads on other stripes neither wait for nor flush each other's mutations. 
+	 * call this before sharing the map between threads. pending mutations are flushed.
+	 * 
+	 * @param n the number of BatchWriters. 1 is the default, single writer mode
+	 */
+	public synchronized AccumuloSortedMap<K, V> setWriteStripes(int n){
+		if(n < 1)
+			throw new IllegalArgumentException("need at least 1 write stripe");
+		closeBatchWriters();
+		Object[] locks = new Object[n];
+		for(int i=0;i<n;i++)
+			locks[i] = new Object();
+		stripeLocks = locks;
+		batchWriters = new BatchWriter[n];
+		return this;
+	}
+
+	private void closeBatchWriters(){
+		for(int i=0;i<batchWriters.length;i++){
+			synchronized(stripeLocks[i]){
+				try{
+					if(batchWriters[i] != null)
+						batchWriters[i].close();
+				}
+				catch(MutationsRejectedException e){
+					log.error(e.getMessage());
+				}
+				batchWriters[i] = null;
+			}
+		}
 	}
 
 
@@ -699,24 +1361,106 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		return bwc;
 	}
 	protected Entry<Key, Value> getEntry(Object key) {
-		Scanner	s;
+		return getEntry(getRange(key));
+	}
+
+	/**
+	 * @param r a Range covering a single row, from getRange()
+	 */
+	protected Entry<Key, Value> getEntry(Range r) {
+		NearCache<ByteSequence,Entry<Key,Value>> cache = nearCache;
+		ByteSequence row = null;
+		long cacheVersion = 0;
+		if(cache != null){
+			row = r.getStartKey().getRowData();
+			Entry<Key, Value> cached = cache.get(row);
+			if(cached != null){
+				if(nearCacheTimeOutMs <= 0 || cached.getKey().getTimestamp() + nearCacheTimeOutMs > System.currentTimeMillis())
+					return cached;
+				cache.expire(row);
+			}
+			// a write invalidated during the scan may have been missed by it, so its result isn't cached
+			cacheVersion = cache.getVersion();
+		}
+		Entry<Key, Value> e = scanPoint(r);
+		if(e != null && cache != null)
+			cache.put(row, e, cacheVersion);
+		return e;
+	}
+
+	/**
+	 * scans r with the pooled Scanner. if that fails because another client deleted or recreated the table, 
+	 * the pooled Scanners are invalidated and the scan is retried once with a new one.
+	 */
+	private Entry<Key, Value> scanPoint(Range r){
+		PooledScanner p;
 		try {
-			s = getScanner();
+			p = getPooledScanner();
 		} catch (TableNotFoundException e1) {
 			log.error(e1.getMessage());
 			throw new RuntimeException(e1);
 		}
-		Key k1 = getKey(key);
-		k1.setTimestamp(0);
-		Key k2 = getKey(key);
-		k2.setTimestamp(Long.MAX_VALUE);
-		s.setRange(new Range(k2,k1));
-		Iterator<Entry<Key, Value>> it = s.iterator();
-		if(it.hasNext()){
-			Entry<Key, Value> e = it.next();
-			return e;
+		try{
+			return firstEntry(p.scanner, r);
 		}
-		return null;
+		catch(RuntimeException ex){
+			if(!isTableGone(ex) && Objects.equals(p.tableId, tableId()))
+				throw ex;
+			log.warn("table "+getTable()+" was deleted or recreated, replacing pooled Scanners: "+ex.getMessage());
+			invalidatePooledScanners();
+		}
+		try {
+			return firstEntry(getPointScanner(), r);
+		} catch (TableNotFoundException e1) {
+			log.error(e1.getMessage());
+			throw new RuntimeException(e1);
+		}
+	}
+
+	private static Entry<Key, Value> firstEntry(Scanner s,Range r){
+		s.setRange(r);
+		Iterator<Entry<Key, Value>> it = s.iterator();
+		return it.hasNext() ? it.next() : null;
+	}
+
+	/**
+	 * @return the current id of the table, or null if it doesn't exist or the map has no Connector
+	 */
+	private String tableId(){
+		Connector c = getConnector();
+		return c == null ? null : c.tableOperations().tableIdMap().get(getTable());
+	}
+
+	/**
+	 * @return true if t was caused by the table being deleted or not found
+	 */
+	private static boolean isTableGone(Throwable t){
+		for(;t != null;t = t.getCause()){
+			if(t instanceof TableDeletedException || t instanceof TableNotFoundException)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * @param key
+	 * @return the Range covering all timestamps of key
+	 */
+	protected Range getRange(Object key){
+		return getRange(getKey(key));
+	}
+	protected Range getRange(Key k1){
+		Key k2 = new Key(k1);
+		k1.setTimestamp(0);
+		k2.setTimestamp(Long.MAX_VALUE);
+		return new Range(k2,k1);
+	}
+
+	/**
+	 * @return the near cache, whose hit/miss/eviction counters can be used to size it, or null if it isn't enabled
+	 */
+	public NearCache<ByteSequence,Entry<Key,Value>> getNearCache(){
+		return nearCache;
 	}
 
 	/**
@@ -728,7 +1472,14 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	protected Key getKey(Object key){
 		if(key == null)
 			return null;
-		Key k = new Key(getKeySerde().serialize(key),getColumnFamily(),getColumnQualifier(),getColumnVisibility(),System.currentTimeMillis());
+		return getKey(serializeKey(key));
+	}
+	/**
+	 * @param row a serialized key, in array()[0,limit())
+	 */
+	protected Key getKey(ByteBuffer row){
+		byte[] cf = getColumnFamily(), cq = getColumnQualifier(), cv = getColumnVisibility();
+		Key k = new Key(row.array(),0,row.limit(),cf,0,cf.length,cq,0,cq.length,cv,0,cv.length,System.currentTimeMillis());
 		return k;
 	}
 
@@ -763,14 +1514,61 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	 */
 	protected Scanner getScanner() throws TableNotFoundException{
 		Scanner s = getConnector().createScanner(getTable(), getAuthorizations());
-		EnumSet<IteratorScope> all = EnumSet.allOf(IteratorScope.class);
-		int prior = ITERATOR_PRIORITY_VERSIONING;
-		IteratorSetting is = new IteratorSetting(prior,ITERATOR_NAME_VERSIONING+prior,VersioningIterator.class);
-		VersioningIterator.setMaxVersions(is, 1);
-		s.addScanIterator(is);
+		addVersioningIterator(s);
 		return s;
 	}
 
+	/**
+	 * BatchScanner equivalent of getScanner(). sees 1 value per key. 
+	 * the caller must set the ranges and close() the BatchScanner.
+	 */
+	protected BatchScanner getBatchScanner(int numThreads) throws TableNotFoundException{
+		BatchScanner s = getConnector().createBatchScanner(getTable(), getAuthorizations(), numThreads);
+		addVersioningIterator(s);
+		return s;
+	}
+
+	/**
+	 * BatchScanner equivalent of getMultiScanner()
+	 */
+	protected BatchScanner getMultiBatchScanner(int numThreads) throws TableNotFoundException{
+		return getConnector().createBatchScanner(getTable(), getAuthorizations(), numThreads);
+	}
+
+	private void addVersioningIterator(ScannerBase s){
+		s.addScanIterator(VERSIONING_SETTING);
+	}
+
+	/**
+	 * point reads reuse a Scanner per thread, so the Scanner and its iterator stack are only built once. 
+	 * each map instance holds one Scanner for every thread that has called get(), until the thread ends. 
+	 * the pooled Scanner is replaced when scannerGeneration() changes, and by getEntry() if the table was deleted under it.
+	 */
+	protected Scanner getPointScanner() throws TableNotFoundException{
+		return getPooledScanner().scanner;
+	}
+
+	private PooledScanner getPooledScanner() throws TableNotFoundException{
+		PooledScanner p = pointScanner.get();
+		int generation = scannerGeneration();
+		if(p == null || p.generation != generation){
+			p = new PooledScanner(getScanner(),generation,tableId());
+			pointScanner.set(p);
+		}
+		return p;
+	}
+
+	/**
+	 * incremented when pooled Scanners become stale, eg when the table is recreated
+	 */
+	protected int scannerGeneration(){
+		return scannerGeneration;
+	}
+
+	protected void invalidatePooledScanners(){
+		scannerGeneration++;
+	}
+
 	/* (non-Javadoc)
 	 * @see com.isentropy.accumulo.collections.AccumuloSortedMapIF#getTable()
 	 */
@@ -825,25 +1623,30 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 
 		long keySum=0;
 		int valueSum=0;
+		long newKeys=0;
 		try{
 			BatchWriter bw = getBatchWriter();
+			List<Entry> chunk = new ArrayList<Entry>(DEFAULT_IMPORT_CHUNK_SIZE);
 			for(;it.hasNext();){
 				Entry e = (Entry) it.next();
 				K key = (K) e.getKey();
 				V value = (V) e.getValue();
-				if(trans != null){
-					Entry tranformed = trans.transformKeyValue(key, value);
-					addPutMutation((K) tranformed.getKey(), (V) tranformed.getValue(), bw);										
-				}
-				else{
-					addPutMutation(key,value,bw);					
+				chunk.add(trans != null ? trans.transformKeyValue(key, value) : e);
+				if(chunk.size() == DEFAULT_IMPORT_CHUNK_SIZE){
+					newKeys += writeImportChunk(chunk,bw);
+					chunk.clear();
 				}
 				if(computeChecksum){
 					keySum += key.hashCode();
 					valueSum += value.hashCode();
 				}
 			}
+			newKeys += writeImportChunk(chunk,bw);
 			bw.flush();
+			// gets during the import may have cached old values of imported keys
+			if(nearCache != null)
+				nearCache.clear();
+			adjustSize(newKeys);
 			return (keySum << 32) | valueSum;
 		}
 		catch(MutationsRejectedException e){
@@ -857,6 +1660,322 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			}
 		}
 	}
+	/**
+	 * parallel version of importAll(it,trans,computeChecksum). the calling thread reads and transforms the iterator, 
+	 * and partitions the entries over numThreads workers by the hash of their serialized keys. each worker serializes 
+	 * its chunks of DEFAULT_IMPORT_CHUNK_SIZE entries and adds them to a BatchWriter made for this import. 
+	 * all entries of a key go to the same worker in input order, so a key imported twice keeps its last value, 
+	 * and counted and indexed mode see each key's previous value once. the chunk queues are bounded, 
+	 * so reading blocks when the workers fall behind.
+	 * 
+	 * @return the same checksum as importAll(it,trans,computeChecksum)
+	 */
+	public long importAll(Iterator it,KeyValueTransformer trans,boolean computeChecksum,int numThreads) {
+		if(numThreads <= 1)
+			return importAll(it,trans,computeChecksum);
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+
+		final List<Entry> endOfInput = Collections.emptyList();
+		ExecutorService workers = Executors.newFixedThreadPool(numThreads);
+		List<Future<Long>> newKeyCounts = new ArrayList<Future<Long>>();
+		List<BlockingQueue<List<Entry>>> queues = new ArrayList<BlockingQueue<List<Entry>>>(numThreads);
+		BatchWriter bw = null;
+		try{
+			// not a write stripe's writer, which put() errors may close and replace
+			final BatchWriter importWriter = bw = getConnector().createBatchWriter(getTable(), getBatchWriterConfig());
+			for(int i=0;i<numThreads;i++){
+				final BlockingQueue<List<Entry>> chunks = new ArrayBlockingQueue<List<Entry>>(2);
+				queues.add(chunks);
+				newKeyCounts.add(workers.submit(new Callable<Long>(){
+					@Override
+					public Long call() throws Exception {
+						long newKeys=0;
+						for(List<Entry> chunk = chunks.take();chunk != endOfInput;chunk = chunks.take())
+							newKeys += writeImportChunk(chunk,importWriter);
+						return newKeys;
+					}
+				}));
+			}
+			long keySum=0;
+			int valueSum=0;
+			List<List<Entry>> partitions = new ArrayList<List<Entry>>(numThreads);
+			for(int i=0;i<numThreads;i++)
+				partitions.add(new ArrayList<Entry>(DEFAULT_IMPORT_CHUNK_SIZE));
+			for(;it.hasNext();){
+				Entry e = (Entry) it.next();
+				K key = (K) e.getKey();
+				V value = (V) e.getValue();
+				if(computeChecksum){
+					keySum += key.hashCode();
+					valueSum += value.hashCode();
+				}
+				if(trans != null)
+					e = trans.transformKeyValue(key, value);
+				int i = importPartition(e.getKey(),numThreads);
+				List<Entry> chunk = partitions.get(i);
+				chunk.add(e);
+				if(chunk.size() == DEFAULT_IMPORT_CHUNK_SIZE){
+					enqueueImportChunk(queues.get(i),chunk,newKeyCounts);
+					partitions.set(i, new ArrayList<Entry>(DEFAULT_IMPORT_CHUNK_SIZE));
+				}
+			}
+			for(int i=0;i<numThreads;i++){
+				if(!partitions.get(i).isEmpty())
+					enqueueImportChunk(queues.get(i),partitions.get(i),newKeyCounts);
+				enqueueImportChunk(queues.get(i),endOfInput,newKeyCounts);
+			}
+
+			long newKeys=0;
+			for(Future<Long> f : newKeyCounts)
+				newKeys += f.get();
+			bw.flush();
+			// gets during the import may have cached old values of imported keys
+			if(nearCache != null)
+				nearCache.clear();
+			adjustSize(newKeys);
+			return (keySum << 32) | valueSum;
+		}
+		catch(InterruptedException | ExecutionException | MutationsRejectedException | TableNotFoundException e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+		finally{
+			workers.shutdownNow();
+			if(bw != null){
+				try {
+					bw.close();
+				} catch (MutationsRejectedException e) {
+					log.error(e.getMessage());
+				}
+			}
+		}
+	}
+	/**
+	 * @return the import worker of key, from the hash of its serialized form
+	 */
+	private int importPartition(Object key,int partitions){
+		ByteBuffer row = serializeKey(key);
+		byte[] b = row.array();
+		int h = 1;
+		for(int i=0;i<row.limit();i++)
+			h = 31*h + b[i];
+		return (h & Integer.MAX_VALUE) % partitions;
+	}
+	/**
+	 * adds put mutations for a chunk of (already transformed) entries to bw. 
+	 * in counted or indexed mode, bw is first flushed so that earlier chunks are visible, and the chunk's keys are 
+	 * looked up with getBatch() to count the new ones and to move the previous values' index entries.
+	 * 
+	 * @return the number of distinct keys in the chunk that were not yet in the map, or 0 if not in counted mode
+	 */
+	private long writeImportChunk(List<Entry> chunk,BatchWriter bw) throws MutationsRejectedException{
+		if(chunk.isEmpty())
+			return 0;
+		long newKeys = 0;
+		boolean indexed = isIndexed();
+		Map<K,V> prevs = null;
+		if(isCounted() || indexed){
+			bw.flush();
+			Set<K> keys = new HashSet<K>();
+			for(Entry e : chunk)
+				keys.add((K) e.getKey());
+			prevs = getBatch(keys);
+			newKeys = keys.size() - prevs.size();
+		}
+		for(Entry e : chunk)
+			addPutMutation((K) e.getKey(), (V) e.getValue(), bw);
+		if(indexed){
+			try{
+				for(Entry e : chunk){
+					// a key repeated in the chunk replaces its earlier value
+					V prev = prevs.put((K) e.getKey(), (V) e.getValue());
+					for(ValueIndex<K,V> index : valueIndexes.values())
+						index.update((K) e.getKey(), prev, (V) e.getValue());
+				}
+				for(ValueIndex<K,V> index : valueIndexes.values())
+					index.flush();
+			}
+			catch(TableNotFoundException e){
+				log.error(e.getMessage());
+				throw new RuntimeException(e);
+			}
+		}
+		return newKeys;
+	}
+	/**
+	 * blocks until the chunk fits in the queue. throws the worker's exception if a worker died, 
+	 * rather than waiting forever for a consumer.
+	 */
+	private static void enqueueImportChunk(BlockingQueue<List<Entry>> chunks,List<Entry> chunk,List<? extends Future<?>> workers) throws InterruptedException, ExecutionException{
+		while(!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)){
+			for(Future<?> f : workers){
+				if(f.isDone())
+					f.get();
+			}
+		}
+	}
+	/**
+	 * bulk loads entries by writing sorted RFiles under workDir and importing them with 
+	 * TableOperations.importDirectory(). uses the default hadoop FileSystem, which must be 
+	 * one the tablet servers can read.
+	 * 
+	 * @see #bulkImportAll(Iterator, KeyValueTransformer, boolean, FileSystem, String, boolean)
+	 */
+	public long bulkImportAll(Iterator it,KeyValueTransformer trans,boolean computeChecksum,String workDir,boolean partitionOnSplits) {
+		try {
+			return bulkImportAll(it,trans,computeChecksum,FileSystem.get(new Configuration()),workDir,partitionOnSplits);
+		} catch (IOException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * bulk loads entries by writing sorted RFiles and importing them with TableOperations.importDirectory(). 
+	 * entries are sorted in memory in runs of up to getBulkImportRunBytes(), and each run is spilled to its own RFile(s). 
+	 * later runs get later timestamps, so a key imported twice keeps its last value, as with importAll(). 
+	 * within a run, a repeated key keeps only its last value, even if the map allows multiple values per key. 
+	 * in counted mode, the map is recounted after the import, and value indexes are rebuilt.
+	 * 
+	 * @param fs the FileSystem to write RFiles to
+	 * @param workDir a directory in fs. files are written to a new subdirectory, which is deleted after a successful import
+	 * @param partitionOnSplits if true, a new RFile is started at each of the table's split points, so each file 
+	 * is assigned to a single tablet
+	 * @return the same checksum as importAll(it,trans,computeChecksum)
+	 */
+	public long bulkImportAll(Iterator it,KeyValueTransformer trans,boolean computeChecksum,FileSystem fs,String workDir,boolean partitionOnSplits) {
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+
+		long keySum=0;
+		int valueSum=0;
+		try{
+			Path importDir = new Path(workDir,"bulk"+Util.randomHexString(10));
+			Path filesDir = new Path(importDir,"files");
+			Path failuresDir = new Path(importDir,"failures");
+			fs.mkdirs(filesDir);
+			fs.mkdirs(failuresDir);
+			List<Text> splits = new ArrayList<Text>();
+			if(partitionOnSplits){
+				splits.addAll(tabletSplits());
+			}
+			TreeMap<Key,Value> run = new TreeMap<Key,Value>();
+			long runBytes = 0;
+			int runCount = 0;
+			long runTimestamp = 0;
+			for(;it.hasNext();){
+				Entry e = (Entry) it.next();
+				K key = (K) e.getKey();
+				V value = (V) e.getValue();
+				if(computeChecksum){
+					keySum += key.hashCode();
+					valueSum += value.hashCode();
+				}
+				if(trans != null){
+					Entry tranformed = trans.transformKeyValue(key, value);
+					key = (K) tranformed.getKey();
+					value = (V) tranformed.getValue();
+				}
+				Key k = getKey(key);
+				k.setTimestamp(0);
+				Value v = new Value(getValueSerde().serialize(value));
+				run.put(k, v);
+				runBytes += k.getSize() + v.getSize();
+				if(runBytes >= getBulkImportRunBytes()){
+					runTimestamp = Math.max(System.currentTimeMillis(), runTimestamp+1);
+					writeRFiles(run,runTimestamp,splits,fs,filesDir,runCount++);
+					run.clear();
+					runBytes = 0;
+				}
+			}
+			if(!run.isEmpty()){
+				runTimestamp = Math.max(System.currentTimeMillis(), runTimestamp+1);
+				writeRFiles(run,runTimestamp,splits,fs,filesDir,runCount++);
+			}
+			if(runCount > 0){
+				getConnector().tableOperations().importDirectory(getTable(), filesDir.toString(), failuresDir.toString(), false);
+				int failures = fs.listStatus(failuresDir).length;
+				if(failures > 0)
+					throw new AccumuloException(failures+" files failed to import. see "+failuresDir);
+			}
+			fs.delete(importDir, true);
+			if(nearCache != null)
+				nearCache.clear();
+			// imported files can't tell which keys are new
+			if(isCounted() && runCount > 0)
+				recount();
+			if(runCount > 0){
+				for(String name : new ArrayList<String>(valueIndexes.keySet()))
+					rebuildValueIndex(name);
+			}
+			return (keySum << 32) | valueSum;
+		}
+		catch(IOException | AccumuloException | AccumuloSecurityException | TableNotFoundException e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * writes a sorted run to one RFile, or one RFile per tablet if splits is not empty
+	 */
+	private void writeRFiles(SortedMap<Key,Value> run,long timestamp,List<Text> splits,FileSystem fs,Path dir,int runIndex) throws IOException{
+		FileSKVWriter writer = null;
+		int fileCount = 0;
+		int splitIndex = 0;
+		try{
+			for(Entry<Key,Value> e : run.entrySet()){
+				Key k = e.getKey();
+				boolean crossedSplit = false;
+				// tablets contain rows <= their end row
+				while(splitIndex < splits.size() && k.compareRow(splits.get(splitIndex)) > 0){
+					splitIndex++;
+					crossedSplit = true;
+				}
+				if(writer != null && crossedSplit){
+					writer.close();
+					writer = null;
+				}
+				if(writer == null){
+					String file = new Path(dir,String.format("run%05d_%05d.rf", runIndex, fileCount++)).toString();
+					writer = FileOperations.getInstance().openWriter(file, fs, fs.getConf(), AccumuloConfiguration.getDefaultConfiguration());
+					writer.startDefaultLocalityGroup();
+				}
+				Key stamped = new Key(k);
+				stamped.setTimestamp(timestamp);
+				writer.append(stamped, e.getValue());
+			}
+		}
+		finally{
+			if(writer != null)
+				writer.close();
+		}
+	}
+
+	/**
+	 * the approximate number of serialized bytes bulkImportAll() sorts in memory before writing them to RFiles
+	 */
+	public long getBulkImportRunBytes(){
+		return bulkImportRunBytes;
+	}
+	public AccumuloSortedMap<K,V> setBulkImportRunBytes(long bytes){
+		bulkImportRunBytes = bytes;
+		return this;
+	}
+	private void invalidateNearCache(ByteSequence row){
+		if(nearCache != null)
+			nearCache.invalidate(row);
+	}
+	/**
+	 * invalidates the row of a mutation after it was written. makeMutation() already invalidated it, 
+	 * but a get() before the write was flushed may have cached the old value again
+	 */
+	private void invalidateNearCache(Mutation m){
+		if(nearCache != null)
+			nearCache.invalidate(new ArrayByteSequence(m.getRow()));
+	}
+
 	protected void init(boolean createTable, boolean errorIfTableAlreadyExists) throws AccumuloException, AccumuloSecurityException{
 		try {
 			if(createTable){
@@ -873,13 +1992,25 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 				log.info("table already exists: "+getTable());
 			}
 		}
+		if(isSizeTable(getTable()+SIZE_TABLE_SUFFIX))
+			sizeTable = getTable()+SIZE_TABLE_SUFFIX;
 	}
 	public boolean isClearable() {
 		return clearable;
 	}
 
+	/**
+	 * reads at most one entry
+	 */
 	public boolean isEmpty() {
-		return size() == 0;
+		try {
+			Scanner s = getScanner();
+			s.setBatchSize(1);
+			return !s.iterator().hasNext();
+		} catch (TableNotFoundException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
 	}
 
 
@@ -889,7 +2020,7 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 
 	protected Iterator<java.util.Map.Entry<K, V>> iterator(){
 		try {
-			return new EntrySetIterator(getScanner().iterator());
+			return entryIterator(getScanner().iterator());
 		} catch (TableNotFoundException e) {
 			log.error(e.getMessage());
 			throw new RuntimeException(e);
@@ -945,6 +2076,16 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 				return new KeySetIterator(enclosing.iterator());
 			}
 
+			@Override
+			public Spliterator<K> spliterator() {
+				return enclosing.tabletSpliterator(new Function<Entry<K,V>,K>(){
+					@Override
+					public K apply(Entry<K, V> e) {
+						return e.getKey();
+					}
+				}, enclosing.comparator());
+			}
+
 			@Override
 			public boolean remove(Object o) {
 				return false;
@@ -994,16 +2135,59 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	
 
 	/**
-	 * is there no way in accumulo to efficiently scan to last key??
-	 * 
-	 * this method uses count iterator (which returns last key from each tablet server)
-	 * 
-	 * @return
+	 * walks the tablets backwards from the end of the map's range, and uses LastRowIterator to find 
+	 * the last row of the first non-empty tablet with a binary search of seeks, instead of scanning it.
 	 */
 	@Override
 	public K lastKey() {
-		K k = Collections.max(deriveMap(new CountsDerivedMapper()).keySet(), comparator());
-		return k;
+		try {
+			List<Range> ranges = tabletRanges();
+			for(int i=ranges.size()-1;i>=0;i--){
+				Scanner s = getScanner();
+				s.setRange(ranges.get(i));
+				s.setBatchSize(1);
+				int prior = nextIteratorPriority();
+				s.addScanIterator(new IteratorSetting(prior,LastRowIterator.class.getSimpleName()+prior,LastRowIterator.class));
+				Iterator<Entry<Key,Value>> it = s.iterator();
+				if(it.hasNext())
+					return (K) Util.deserialize(getKeySerde(), it.next().getKey().getRowData());
+			}
+			throw new NoSuchElementException();
+		} catch (TableNotFoundException | AccumuloSecurityException | AccumuloException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return the range of getScanner() clipped to each tablet it overlaps, in order
+	 */
+	protected List<Range> tabletRanges() throws TableNotFoundException, AccumuloSecurityException, AccumuloException{
+		List<Text> splits = tabletSplits();
+		Range scanRange = getScanner().getRange();
+		if(scanRange == null)
+			scanRange = new Range();
+		List<Range> ranges = new ArrayList<Range>();
+		for(int i=0;i<=splits.size();i++){
+			Text tabletStart = i == 0 ? null : splits.get(i-1);
+			Text tabletEnd = i == splits.size() ? null : splits.get(i);
+			Range r = scanRange.clip(new Range(tabletStart,false,tabletEnd,true), true);
+			if(r != null)
+				ranges.add(r);
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return the table's sorted split points, or an empty list if there is no connector
+	 */
+	protected List<Text> tabletSplits() throws TableNotFoundException, AccumuloSecurityException, AccumuloException{
+		List<Text> splits = new ArrayList<Text>();
+		if(getConnector() == null)
+			return splits;
+		splits.addAll(getConnector().tableOperations().listSplits(getTable()));
+		Collections.sort(splits);
+		return splits;
 	}
 	/**
 	 * @return a local in memory TreeMap copy containing this ENTIRE map 
@@ -1015,6 +2199,12 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	}
 
 
+	/**
+	 * deserializes the entries of a scan of this map. used by iterator(), streams and publisher()
+	 */
+	protected Iterator<java.util.Map.Entry<K, V>> entryIterator(Iterator<Entry<Key, Value>> raw){
+		return new EntrySetIterator(raw);
+	}
 	/**
 	 * make a ForiegnKey to a key in this table
 	 * @param key
@@ -1036,6 +2226,19 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		}
 	}
 
+	/**
+	 * atomic merge, see compareAndSet()
+	 */
+	@Override
+	public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+		while(true){
+			V prev = get(key);
+			V next = prev == null ? value : remappingFunction.apply(prev, value);
+			if(compareAndSet(key, prev, next))
+				return next;
+		}
+	}
+
 	/**
 	 * submaps may pile on iterators to chain of getScanner. this method returns the next iterator priority
 	 */
@@ -1049,7 +2252,10 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 			throw new UnsupportedOperationException();
 		try {
 			V prev = this.get(key);
-			putWithoutGet(key,value);
+			writeAndFlush(makePutMutation(key,value));
+			if(prev == null)
+				adjustSize(1);
+			updateIndexes(key, prev, value);
 			return prev;
 		}
 		catch(Exception e){
@@ -1059,6 +2265,22 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	}
 
 
+	/**
+	 * atomic putIfAbsent, see compareAndSet()
+	 * @return the existing value, or null if value was written
+	 */
+	@Override
+	public V putIfAbsent(K key, V value) {
+		while(true){
+			if(compareAndSet(key, null, value))
+				return null;
+			V prev = get(key);
+			// retry if key was removed since the write was rejected
+			if(prev != null)
+				return prev;
+		}
+	}
+
 	/**
 	 * this method is optimized for batch writing. 
 	 * it should be faster than repeated calls to put(), which flushes BatchWriter after each entry
@@ -1073,34 +2295,207 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	public void putAll(Map<? extends K, ? extends V> m, KeyValueTransformer trans) {
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
-		importAll(m.entrySet().iterator(),trans,false);
+		importAll(m.entrySet().iterator(),trans,false);
+	}
+
+	/**
+	 * same as put(), but doesn't fetch the previous value, except in counted or indexed mode
+	 * @param key
+	 * @param value
+	 */
+	public void putWithoutGet(K key, V value) {
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		if(isCounted() || isIndexed()){
+			put(key,value);
+			return;
+		}
+		writeAndFlush(makePutMutation(key,value));
+	}
+
+	/**
+	 * like putWithoutGet(), but doesn't box key or value if the key SerDe is a LongSerDe 
+	 * and the value SerDe is a LongSerDe, eg LongKeySerde. 
+	 * other SerDes are passed a Long.
+	 */
+	public void putLong(long key, long value) {
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		if(isIndexed()){
+			put((K) Long.valueOf(key), (V) Long.valueOf(value));
+			return;
+		}
+		boolean isNew = isCounted() && getEntry(getRange(getKey(serializeLongKey(key)))) == null;
+		SerDe vs = getValueSerde();
+		byte[] v = vs instanceof LongSerDe ? ((LongSerDe) vs).serializeLong(value) : vs.serialize(value);
+		Mutation m = makeMutation(serializeLongKey(key));
+		m.put(getColumnFamily(), getColumnQualifier(),getParsedColumnVisibility(), v);
+		writeAndFlush(m);
+		if(isNew)
+			adjustSize(1);
+	}
+
+	/**
+	 * like putWithoutGet(), but doesn't box key or value if the key SerDe is a LongSerDe 
+	 * and the value SerDe is a DoubleSerDe, eg DoubleKeySerde. 
+	 * other SerDes are passed a Long key or Double value.
+	 */
+	public void putDouble(long key, double value) {
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		if(isIndexed()){
+			put((K) Long.valueOf(key), (V) Double.valueOf(value));
+			return;
+		}
+		boolean isNew = isCounted() && getEntry(getRange(getKey(serializeLongKey(key)))) == null;
+		SerDe vs = getValueSerde();
+		byte[] v = vs instanceof DoubleSerDe ? ((DoubleSerDe) vs).serializeDouble(value) : vs.serialize(value);
+		Mutation m = makeMutation(serializeLongKey(key));
+		m.put(getColumnFamily(), getColumnQualifier(),getParsedColumnVisibility(), v);
+		writeAndFlush(m);
+		if(isNew)
+			adjustSize(1);
+	}
+
+	/**
+	 * like get(), but doesn't box key or value if the key and value SerDes are LongSerDes
+	 * @return the value of key, or defaultValue if key isn't in the map
+	 */
+	public long getLong(long key, long defaultValue) {
+		Entry<Key, Value> e = getEntry(getRange(getKey(serializeLongKey(key))));
+		if(e == null)
+			return defaultValue;
+		byte[] v = e.getValue().get();
+		SerDe vs = getValueSerde();
+		if(vs instanceof LongSerDe)
+			return ((LongSerDe) vs).deserializeLong(v, 0, v.length);
+		return ((Number) deserializeValue(v)).longValue();
+	}
+
+	/**
+	 * like get(), but doesn't box key or value if the key SerDe is a LongSerDe and the value SerDe is a DoubleSerDe
+	 * @return the value of key, or defaultValue if key isn't in the map
+	 */
+	public double getDouble(long key, double defaultValue) {
+		Entry<Key, Value> e = getEntry(getRange(getKey(serializeLongKey(key))));
+		if(e == null)
+			return defaultValue;
+		byte[] v = e.getValue().get();
+		SerDe vs = getValueSerde();
+		if(vs instanceof DoubleSerDe)
+			return ((DoubleSerDe) vs).deserializeDouble(v, 0, v.length);
+		return ((Number) deserializeValue(v)).doubleValue();
+	}
+
+	private void writeAndFlush(Mutation m) {
+		synchronized(stripeLocks[writeStripe()]){
+			try {
+				BatchWriter bw = getBatchWriter();
+				bw.addMutation(m);
+				bw.flush();
+				invalidateNearCache(m);
+			}
+			catch(MutationsRejectedException e){
+				log.error(e.getMessage());
+				try {
+					reinitBatchWriter();
+					throw new RuntimeException(e);
+				} catch (Exception e1) {
+					log.error(e1.getMessage());
+					throw new RuntimeException(e1);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Asynchronous put. Unlike putWithoutGet(), does not flush after each entry. Mutations from all threads 
+	 * are coalesced into group commits, see setGroupCommit().
+	 * 
+	 * @param key
+	 * @param value
+	 * @return a future that completes when the entry has been written, or completes exceptionally if the write was rejected. 
+	 * get() will see the entry once the future completes. 
+	 * in counted or indexed mode, the size and value indexes are updated once per group commit, before its futures complete. 
+	 * failures of those updates are logged, and don't fail the futures of the written entries.
+	 */
+	public CompletableFuture<Void> putAsync(K key, V value){
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		// in counted or indexed mode, the previous value must be read before the write is submitted
+		V prev = isCounted() || isIndexed() ? get(key) : null;
+		Mutation m = makePutMutation(key, value);
+		return getGroupCommitWriter().submit(m, new AsyncWrite<K,V>(m, isCounted() && prev == null ? 1 : 0, isIndexed(), key, prev, value));
 	}
 
 	/**
-	 * same as put(), but doesn't fetch the previous value
+	 * Asynchronous remove(), see putAsync()
 	 * @param key
-	 * @param value
+	 * @return
 	 */
-	public void putWithoutGet(K key, V value) {
+	public CompletableFuture<Void> removeAsync(Object key){
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
-		try {
-			BatchWriter bw = getBatchWriter();
-			addPutMutation(key, value,bw);
-			bw.flush();
+		V prev = isCounted() || isIndexed() ? get(key) : null;
+		Mutation m = makeRemoveMutation(key);
+		return getGroupCommitWriter().submit(m, new AsyncWrite<K,V>(m, prev != null ? -1 : 0, prev != null && isIndexed(), (K) key, prev, null));
+	}
+
+	/**
+	 * what a committed putAsync() or removeAsync() still has to do besides the write itself
+	 */
+	private static class AsyncWrite<K,V>{
+		final Mutation mutation;
+		final long sizeDelta;
+		final boolean indexed;
+		final K key;
+		final V prev,value;
+		AsyncWrite(Mutation mutation,long sizeDelta,boolean indexed,K key,V prev,V value){
+			this.mutation = mutation;
+			this.sizeDelta = sizeDelta;
+			this.indexed = indexed;
+			this.key = key;
+			this.prev = prev;
+			this.value = value;
 		}
-		catch(MutationsRejectedException e){
-			log.error(e.getMessage());
-			try {
-				reinitBatchWriter();
-				throw new RuntimeException(e);
-			} catch (Exception e1) {
-				log.error(e1.getMessage());
-				throw new RuntimeException(e1);
+	}
+
+	/**
+	 * called by the GroupCommitWriter once per committed group. the group's size changes are summed into one 
+	 * adjustSize(), and its index updates are flushed once per index.
+	 */
+	private void applyAsyncWrites(List<Object> writes){
+		long delta = 0;
+		boolean indexed = false;
+		for(Object o : writes){
+			AsyncWrite<K,V> w = (AsyncWrite<K,V>) o;
+			invalidateNearCache(w.mutation);
+			delta += w.sizeDelta;
+			indexed |= w.indexed;
+		}
+		try{
+			adjustSize(delta);
+		}
+		finally{
+			if(indexed){
+				try{
+					for(ValueIndex<K,V> index : valueIndexes.values()){
+						for(Object o : writes){
+							AsyncWrite<K,V> w = (AsyncWrite<K,V>) o;
+							if(w.indexed)
+								index.update(w.key, w.prev, w.value);
+						}
+						index.flush();
+					}
+				}
+				catch(MutationsRejectedException | TableNotFoundException e){
+					log.error(e.getMessage());
+					throw new RuntimeException(e);
+				}
 			}
 		}
 	}
-	
+
 	public AccumuloSortedMap<K, V> regexFilter(String keyRegex,
 			String valueRegex) {
 		Map<String,String> cfg = new HashMap<String,String>();
@@ -1126,33 +2521,81 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	 * This is a known limitation which will be addressed by ACCUMULO-2990 in the future.
 	 */
 	protected void reinitBatchWriter() throws TableNotFoundException, MutationsRejectedException{
-		if(batchWriter != null)
-			batchWriter.close();
-		batchWriter = getConnector().createBatchWriter(getTable(), getBatchWriterConfig());
+		int i = writeStripe();
+		synchronized(stripeLocks[i]){
+			BatchWriter old = batchWriters[i];
+			batchWriters[i] = getConnector().createBatchWriter(getTable(), getBatchWriterConfig());
+			// a rejected writer throws again on close, after it has been replaced
+			if(old != null)
+				old.close();
+		}
 	}
 
 	@Override
 	public V remove(Object key) {
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
-		try {
-			V prev = this.get(key);
-			BatchWriter bw = getBatchWriter();
-			addRemoveMutation(key,bw);
-			bw.flush();
-			return prev;
-		}
-		catch(MutationsRejectedException e){
-			log.error(e.getMessage());
+		V prev = this.get(key);
+		synchronized(stripeLocks[writeStripe()]){
 			try {
-				reinitBatchWriter();
-				throw new RuntimeException(e);
-			} catch (Exception e1) {
-				log.error(e1.getMessage());
-				throw new RuntimeException(e1);
+				BatchWriter bw = getBatchWriter();
+				Mutation m = makeRemoveMutation(key);
+				bw.addMutation(m);
+				bw.flush();
+				invalidateNearCache(m);
+			}
+			catch(MutationsRejectedException e){
+				log.error(e.getMessage());
+				try {
+					reinitBatchWriter();
+					throw new RuntimeException(e);
+				} catch (Exception e1) {
+					log.error(e1.getMessage());
+					throw new RuntimeException(e1);
+				}
 			}
 		}
+		if(prev != null){
+			adjustSize(-1);
+			updateIndexes((K) key, prev, null);
+		}
+		return prev;
+	}
+	/**
+	 * atomic conditional remove, see compareAndSet()
+	 */
+	@Override
+	public boolean remove(Object key, Object value) {
+		if(value == null)
+			return false;
+		return compareAndSet((K) key, (V) value, null);
+	}
+
+	/**
+	 * atomic conditional replace, see compareAndSet()
+	 */
+	@Override
+	public boolean replace(K key, V oldValue, V newValue) {
+		if(oldValue == null)
+			return false;
+		return compareAndSet(key, oldValue, newValue);
+	}
+
+	/**
+	 * atomic replace, see compareAndSet()
+	 * @return the previous value, or null if key was absent and nothing was written
+	 */
+	@Override
+	public V replace(K key, V value) {
+		while(true){
+			V prev = get(key);
+			if(prev == null)
+				return null;
+			if(compareAndSet(key, prev, value))
+				return prev;
+		}
 	}
+
 	/**
 	 * resolves a ForeignKey using the connector of this map
 	 * @param fk
@@ -1169,16 +2612,54 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		fk.setConnector(conn);
 		return fk.resolve();
 	}
+
+	/**
+	 * resolves ForeignKeys using the connector of this map, with one BatchScanner per target map. 
+	 * see ForeignKey.resolveAll()
+	 * @return a map of ForeignKey->value for the keys that were found
+	 */
+	public Map<ForeignKey,Object> resolveAll(Collection<? extends ForeignKey> fks) throws InstantiationException, IllegalAccessException, ClassNotFoundException, AccumuloException, AccumuloSecurityException{
+		if(conn == null)
+			return new HashMap<ForeignKey,Object>();
+		return ForeignKey.resolveAll(fks, conn);
+	}
+
+	/**
+	 * same as joinForeignKeys(DEFAULT_JOIN_PAGE_SIZE,false)
+	 */
+	public <V2> AccumuloSortedMap<K,V2> joinForeignKeys(){
+		return joinForeignKeys(DEFAULT_JOIN_PAGE_SIZE,false);
+	}
+
+	/**
+	 * for maps whose values are ForeignKeys. see ForeignKeyJoinMap
+	 * @param pageSize the number of entries resolved together
+	 * @param mergeJoin if true, target maps are scanned in step with this map instead of looked up in batches. 
+	 * use when the referenced keys are in the same order as this map's keys
+	 * @return a read only map of this map's keys to the values their ForeignKeys point to
+	 */
+	public <V2> AccumuloSortedMap<K,V2> joinForeignKeys(int pageSize, boolean mergeJoin){
+		return new ForeignKeyJoinMap<K,V2>(this,pageSize,mergeJoin);
+	}
 	
 	public AccumuloSortedMap<K,StatisticalSummary> rowStats(){
 		return (AccumuloSortedMap<K,StatisticalSummary>) deriveMap(new RowStatsMapper(),true);
 	}
+	/**
+	 * derives a map of QuantileSketches of each key's numeric values
+	 */
+	public AccumuloSortedMap<K,QuantileSketch> rowQuantiles(){
+		return (AccumuloSortedMap<K,QuantileSketch>) deriveMap(new RowQuantilesMapper(),true);
+	}
 	public final AccumuloSortedMap<K, V> sample(Sampler s){
-		return sample(s.samplingSeed,s.fromFractionalHash,s.toFractionalHash,s.fromTs,s.toTs);
+		return sample(s.samplingSeed,s.fromFractionalHash,s.toFractionalHash,s.fromTs,s.toTs,s.getHash());
 	}
 	
+	/**
+	 * samples with a random seed. uses SamplingFilter.HASH_MURMUR, since the sample can't be reproduced anyway.
+	 */
 	public final AccumuloSortedMap<K, V> sample(final double fraction){
-		return sample(Util.randomHexString(DEFAULT_RANDSEED_LENGTH),0,fraction,-1, -1);
+		return sample(Util.randomHexString(DEFAULT_RANDSEED_LENGTH),0,fraction,-1, -1,SamplingFilter.HASH_MURMUR);
 	}
 
 	public final AccumuloSortedMap<K, V> sample(final String randSeed, final double from_fraction, final double to_fraction){
@@ -1186,20 +2667,40 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	}
 
 	public AccumuloSortedMap<K, V> sample(final String randSeed,final double from_fraction, final double to_fraction, final long min_timestamp, final long max_timestamp){
+		return sample(randSeed,from_fraction,to_fraction,min_timestamp,max_timestamp,SamplingFilter.HASH_SHA256);
+	}
+
+	/**
+	 * @param hash SamplingFilter.HASH_SHA256, which reproduces samples taken before the hash option existed, 
+	 * or the much faster SamplingFilter.HASH_MURMUR
+	 */
+	public AccumuloSortedMap<K, V> sample(final String randSeed,final double from_fraction, final double to_fraction, final long min_timestamp, final long max_timestamp, final String hash){
 		Map<String,String> cfg = new HashMap<String,String>();
 		cfg.put(SamplingFilter.OPT_FROMFRACTION, Double.toString(from_fraction));
 		cfg.put(SamplingFilter.OPT_TOFRACTION, Double.toString(to_fraction));
 		cfg.put(SamplingFilter.OPT_RANDOMSEED, randSeed);
+		cfg.put(SamplingFilter.OPT_HASH, hash);
 		if(max_timestamp > 0)
 			cfg.put(SamplingFilter.OPT_MAXTIMESTAMP, Long.toString(max_timestamp));
 		if(min_timestamp > 0)
 			cfg.put(SamplingFilter.OPT_MINTIMESTAMP, Long.toString(min_timestamp));
 		return new IteratorStackedSubmap<K,V>(this,SamplingFilter.class,cfg,getValueSerde());
 	}
+	/**
+	 * sets the number of query threads used by the BatchScanners of getBatch() and getBatchIterator()
+	 * @param numThreads
+	 * @return
+	 */
+	public AccumuloSortedMap<K, V> setBatchScannerThreads(int numThreads){
+		batchScannerThreads = numThreads;
+		return this;
+	}
 	public void setBatchWriterConfig(BatchWriterConfig batchWriterConfig) {
 		this.batchWriterConfig = batchWriterConfig;
 		try {
-			reinitBatchWriter();
+			// recreated with the new config on next use
+			closeBatchWriters();
+			closeGroupCommitWriter();
 		} catch (Exception e) {
 			log.error(e.getMessage());
 			throw new RuntimeException(e);
@@ -1216,6 +2717,50 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		return this;
 	}
 	
+	/**
+	 * configures the group commits of putAsync() and removeAsync(). Pending asynchronous writes are flushed first.
+	 * @param maxLatencyMs maximum time a write waits for its group to be flushed
+	 * @param maxBatchBytes a group is flushed as soon as it holds this many bytes of mutations
+	 * @return
+	 */
+	public AccumuloSortedMap<K, V> setGroupCommit(long maxLatencyMs, long maxBatchBytes){
+		try {
+			closeGroupCommitWriter();
+		} catch (MutationsRejectedException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+		groupCommitLatencyMs = maxLatencyMs;
+		groupCommitBytes = maxBatchBytes;
+		return this;
+	}
+
+	/**
+	 * Enables a bounded client-side LRU cache in front of get(), containsKey() and getTimestamp(). 
+	 * Only keys that were found are cached. Cached entries are invalidated by this client's own 
+	 * put(), remove(), cachePut(), cacheRemove() and importAll(), and are dropped when they are older than 
+	 * the map's entry timeout (see setTimeOutMs()). 
+	 * Writes from other clients are only seen after ttlMs, so choose ttlMs accordingly.
+	 * 
+	 * @param maxEntries maximum number of cached entries. maxEntries <= 0 disables the cache
+	 * @param ttlMs maximum age of cached entries. ttlMs <= 0 means entries don't expire
+	 * @return
+	 */
+	public AccumuloSortedMap<K, V> setNearCache(int maxEntries, long ttlMs){
+		if(maxEntries <= 0){
+			nearCache = null;
+			return this;
+		}
+		try {
+			nearCacheTimeOutMs = getTimeOutMs();
+		} catch (Exception e) {
+			log.warn("Couldn't read timeout for near cache: "+e.getMessage());
+			nearCacheTimeOutMs = -1;
+		}
+		nearCache = new NearCache<ByteSequence,Entry<Key,Value>>(maxEntries, ttlMs);
+		return this;
+	}
+
 	/**
 	 * sets the column family of values
 	 * @param cf
@@ -1239,6 +2784,8 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	 */
 	public AccumuloSortedMap<K, V> setColumnVisibility(byte[] cv){
 		colvis = cv;
+		// the authorizations of pooled Scanners are stale
+		invalidatePooledScanners();
 		return this;
 	}
 	/* (non-Javadoc)
@@ -1307,6 +2854,7 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 		if(isReadOnly())
 			throw new UnsupportedOperationException();
 		try{
+			nearCacheTimeOutMs = timeout > 0 ? timeout : -1;
 			EnumSet<IteratorScope> all = EnumSet.allOf(IteratorScope.class);
 			getConnector().tableOperations().removeIterator(getTable(), ITERATOR_NAME_AGEOFF, all);
 			log.info("Removed timeout for table "+getTable());			
@@ -1365,11 +2913,270 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	 * @see com.isentropy.accumulo.collections.AccumuloSortedMapIF#sizeAsLong()
 	 */
 	public long sizeAsLong(boolean countMultipleValues){
+		if(isCounted() && !countMultipleValues)
+			return readSizeCounter();
 		return MapAggregates.count(this,countMultipleValues);
 	}
 	public long sizeAsLong(){
 		return sizeAsLong(false);
 	}
+
+	public boolean isCounted(){
+		return sizeTable != null;
+	}
+
+	/**
+	 * in counted mode, the number of keys is kept in a SummingCombiner counter in the sibling table 
+	 * getTable()+SIZE_TABLE_SUFFIX. put(), remove() and the other write methods add +1/-1 deltas 
+	 * when a key is added or removed, so sizeAsLong() reads one entry instead of counting the table. 
+	 * this makes putWithoutGet(), putLong(), putDouble() and the async writes read the key first, 
+	 * and importAll() look up each chunk of keys with getBatchIterator(). 
+	 * 
+	 * the counter is exact for a single writer. concurrent writers adding the same new key, 
+	 * entries aged off by setTimeOutMs(), and bulkImportAll() (which recounts) can make it drift; see recount().
+	 * counted mode is detected from the sibling table when the map is opened. a sibling table is only 
+	 * used, or deleted, if it has the ITERATOR_NAME_SIZE_COUNTER SummingCombiner attached, see isSizeTable().
+	 * 
+	 * @param counted if true, creates the size table and counts the map. if false, deletes the size table.
+	 * @throws RuntimeException if a table named getTable()+SIZE_TABLE_SUFFIX exists but is not a size table
+	 */
+	public AccumuloSortedMap<K, V> setCounted(boolean counted){
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		String name = getTable()+SIZE_TABLE_SUFFIX;
+		try{
+			closeSizeWriter();
+			sizeTable = null;
+			if(isSizeTable(name))
+				getConnector().tableOperations().delete(name);
+			else if(getConnector().tableOperations().exists(name)){
+				// never delete or write counter deltas to an unrelated table
+				if(counted)
+					throw new AccumuloException("table "+name+" exists and is not a size table of "+getTable());
+				return this;
+			}
+			if(counted){
+				getConnector().tableOperations().create(name);
+				IteratorSetting is = new IteratorSetting(ITERATOR_PRIORITY_AGEOFF,ITERATOR_NAME_SIZE_COUNTER,SummingCombiner.class);
+				LongCombiner.setEncodingType(is, LongCombiner.Type.VARLEN);
+				Combiner.setCombineAllColumns(is, true);
+				getConnector().tableOperations().attachIterator(name, is);
+				sizeTable = name;
+				recount();
+			}
+			return this;
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * @return true if table exists and has the size counter SummingCombiner attached by setCounted()
+	 */
+	protected boolean isSizeTable(String table) throws AccumuloSecurityException, AccumuloException{
+		try{
+			if(!getConnector().tableOperations().exists(table))
+				return false;
+			if(!getConnector().tableOperations().listIterators(table).containsKey(ITERATOR_NAME_SIZE_COUNTER))
+				return false;
+			IteratorSetting is = getConnector().tableOperations().getIteratorSetting(table, ITERATOR_NAME_SIZE_COUNTER, IteratorScope.scan);
+			return is != null && SummingCombiner.class.getName().equals(is.getIteratorClass());
+		}
+		catch(TableNotFoundException e){
+			// deleted since exists()
+			return false;
+		}
+	}
+
+	/**
+	 * in counted mode, counts the map with MapAggregates.count() and corrects the size counter
+	 * @return the map size
+	 */
+	public long recount(){
+		long count = MapAggregates.count(this,false);
+		if(isCounted())
+			adjustSize(count - readSizeCounter());
+		return count;
+	}
+
+	private long readSizeCounter(){
+		try {
+			Scanner s = getConnector().createScanner(sizeTable, getAuthorizations());
+			s.setRange(Range.exact(new Text(SIZE_ROW)));
+			long size = 0;
+			for(Entry<Key,Value> e : s)
+				size += LongCombiner.VAR_LEN_ENCODER.decode(e.getValue().get());
+			return size;
+		} catch (TableNotFoundException e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * adds delta to the size counter if in counted mode
+	 */
+	private synchronized void adjustSize(long delta){
+		if(!isCounted() || delta == 0)
+			return;
+		try {
+			if(sizeWriter == null)
+				sizeWriter = getConnector().createBatchWriter(sizeTable, getBatchWriterConfig());
+			Mutation m = new Mutation(SIZE_ROW);
+			m.put(getColumnFamily(), getColumnQualifier(), LongCombiner.VAR_LEN_ENCODER.encode(delta));
+			sizeWriter.addMutation(m);
+			sizeWriter.flush();
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			closeSizeWriter();
+			throw new RuntimeException(e);
+		}
+	}
+
+	private synchronized void closeSizeWriter(){
+		try{
+			if(sizeWriter != null)
+				sizeWriter.close();
+		}
+		catch(MutationsRejectedException e){
+			log.error(e.getMessage());
+		}
+		sizeWriter = null;
+	}
+
+	/**
+	 * same as addValueIndex(VALUE_INDEX, null, getValueSerde()). indexes whole values, for keysForValue()
+	 */
+	public AccumuloSortedMap<K, V> addValueIndex(){
+		return addValueIndex(VALUE_INDEX, null, getValueSerde());
+	}
+
+	/**
+	 * maintains an inverted index of field -> key in the table getTable()+INDEX_TABLE_INFIX+name. 
+	 * put(), remove(), importAll() and the other write methods update the index after writing the map, 
+	 * which makes them read the previous value of each key, as in counted mode. 
+	 * bulkImportAll() rebuilds the index. concurrent writers of the same key can leave stale index entries; 
+	 * see rebuildValueIndex(). 
+	 * 
+	 * the index table is created and built from the map's entries if it doesn't exist. 
+	 * unlike counted mode, indexes are not detected when the map is opened, because the extractor is code: 
+	 * each client must call addValueIndex() again, which reuses the existing table.
+	 * 
+	 * @param name the index name. must be valid in an Accumulo table name
+	 * @param extractor returns the indexed field of a value, or null to leave the entry out of the index. 
+	 * null indexes the value itself
+	 * @param fieldSerde serializes fields. must preserve order for keysForIndexRange()
+	 */
+	public AccumuloSortedMap<K, V> addValueIndex(String name, Function<? super V,?> extractor, SerDe fieldSerde){
+		if(isReadOnly())
+			throw new UnsupportedOperationException();
+		if(extractor == null)
+			extractor = Function.identity();
+		String table = getTable()+INDEX_TABLE_INFIX+name;
+		try{
+			ValueIndex<K,V> index = new ValueIndex<K,V>(this, name, table, extractor, fieldSerde);
+			ValueIndex<K,V> old = valueIndexes.put(name, index);
+			if(old != null)
+				old.close();
+			if(!getConnector().tableOperations().exists(table)){
+				getConnector().tableOperations().create(table);
+				index.build();
+			}
+			return this;
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * stops maintaining the index and deletes its table
+	 */
+	public AccumuloSortedMap<K, V> dropValueIndex(String name){
+		ValueIndex<K,V> index = valueIndexes.remove(name);
+		if(index == null)
+			return this;
+		index.close();
+		try{
+			if(getConnector().tableOperations().exists(index.getTable()))
+				getConnector().tableOperations().delete(index.getTable());
+			return this;
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * recreates the index table and indexes every entry of the map
+	 */
+	public AccumuloSortedMap<K, V> rebuildValueIndex(String name){
+		ValueIndex<K,V> index = getValueIndex(name);
+		dropValueIndex(name);
+		return addValueIndex(name, index.getExtractor(), index.getFieldSerde());
+	}
+
+	public boolean isIndexed(){
+		return !valueIndexes.isEmpty();
+	}
+
+	public Set<String> getValueIndexNames(){
+		return Collections.unmodifiableSet(valueIndexes.keySet());
+	}
+
+	protected ValueIndex<K,V> getValueIndex(String name){
+		ValueIndex<K,V> index = valueIndexes.get(name);
+		if(index == null)
+			throw new IllegalArgumentException("no value index named "+name+". see addValueIndex()");
+		return index;
+	}
+
+	/**
+	 * looks up keys in the index created by addValueIndex(), instead of scanning the map
+	 * @return the keys whose value equals value
+	 */
+	public Set<K> keysForValue(Object value){
+		return getValueIndex(VALUE_INDEX).keysFor(value);
+	}
+
+	/**
+	 * @return the keys whose indexed field equals field
+	 */
+	public Set<K> keysForIndex(String name, Object field){
+		return getValueIndex(name).keysFor(field);
+	}
+
+	/**
+	 * @param from the inclusive lower bound, or null for no lower bound
+	 * @param to the exclusive upper bound, or null for no upper bound
+	 * @return the keys whose indexed field is in [from,to). use getBatch() to fetch their values
+	 */
+	public Set<K> keysForIndexRange(String name, Object from, Object to){
+		return getValueIndex(name).keysForRange(from, to);
+	}
+
+	/**
+	 * moves key's entries in every value index from the field of prev to the field of value
+	 */
+	private void updateIndexes(K key, V prev, V value){
+		if(valueIndexes.isEmpty())
+			return;
+		try{
+			for(ValueIndex<K,V> index : valueIndexes.values()){
+				index.update(key, prev, value);
+				index.flush();
+			}
+		}
+		catch(MutationsRejectedException | TableNotFoundException e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
 	/**
 	 * the end include booleans DONT WORK currently because of bug in Accumulo:
 	 * 
@@ -1445,6 +3252,31 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 	public StatisticalSummary valueStats(){
 		return valueStats(false);
 	}
+
+	/**
+	 * estimates the number of distinct values with a HyperLogLog sketch per tablet, see MapAggregates.distinctSketch()
+	 */
+	public long distinctValues(boolean includeMultipleValues){
+		return MapAggregates.distinctValues(this, includeMultipleValues);
+	}
+
+	public long distinctValues(){
+		return distinctValues(false);
+	}
+
+	/**
+	 * estimates the q-quantile of all values that are java Numbers, see MapAggregates.quantileSketch()
+	 */
+	public double quantile(double q){
+		return MapAggregates.quantile(this, q);
+	}
+
+	/**
+	 * finds the k entries with the largest Number values, see MapAggregates.topK()
+	 */
+	public List<Map.Entry> topK(int k){
+		return MapAggregates.topK(this, k);
+	}
 	
 	@Override
 	public Collection<V> values() {
@@ -1491,6 +3323,16 @@ public class AccumuloSortedMap<K,V> implements SortedMap<K,V>{
 				return new ValueSetIterator(parent.iterator());
 			}
 
+			@Override
+			public Spliterator<V> spliterator() {
+				return parent.tabletSpliterator(new Function<Entry<K,V>,V>(){
+					@Override
+					public V apply(Entry<K, V> e) {
+						return e.getValue();
+					}
+				}, null);
+			}
+
 			@Override
 			public boolean remove(Object o) {
 				throw new UnsupportedOperationException();
@@ -25,6 +25,7 @@ import java.io.PrintStream;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.Iterator;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
@@ -52,6 +53,14 @@ public class EmptyAccumuloSortedMap<K,V> extends AccumuloSortedMap<K, V> {
 		return new EmptyScanner();
 	}
 	@Override
+	public Iterator<Map.Entry<K,V>> getBatchIterator(Collection<? extends K> keys){
+		return Collections.<Map.Entry<K,V>>emptyIterator();
+	}
+	@Override
+	public boolean containsValue(Object value) {
+		return false;
+	}
+	@Override
 	public Object resolve(ForeignKey fk) throws InstantiationException, IllegalAccessException, ClassNotFoundException, AccumuloException, AccumuloSecurityException{
 		throw new UnsupportedOperationException("cannot call resolve(fk) on EmptyAccumuloSortedMap since it has no connector");
 	}
@@ -23,12 +23,21 @@ limitations under the License.
 package com.isentropy.accumulo.collections;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.Connector;
 
 import com.isentropy.accumulo.collections.factory.AccumuloSortedMapFactory;
+import com.isentropy.accumulo.util.NearCache;
 
 /**
  * This class represents a map value that points to a key (ie row) in another map.
@@ -38,11 +47,24 @@ import com.isentropy.accumulo.collections.factory.AccumuloSortedMapFactory;
 public class ForeignKey<V> implements Serializable {
 	private static final long serialVersionUID = 1;
 
+	/**
+	 * the number of connectors whose map and factory handles are cached. the least recently used connector's 
+	 * handles are dropped beyond this, so connectors aren't held forever
+	 */
+	public static final int MAX_CACHED_CONNECTORS = 16;
+
+	// target map and factory handles shared by all ForeignKeys that use the same Connector. see invalidateCache()
+	private static class ConnectorCache{
+		final Map<String,AccumuloSortedMap> maps = new ConcurrentHashMap<String,AccumuloSortedMap>();
+		final Map<String,AccumuloSortedMapFactory> factories = new ConcurrentHashMap<String,AccumuloSortedMapFactory>();
+		// time a target map was last found missing after a refresh, so the factory isn't refreshed again until its TTL expires
+		final Map<String,Long> misses = new ConcurrentHashMap<String,Long>();
+	}
+	private static final NearCache<Connector,ConnectorCache> connectorCaches = new NearCache<Connector,ConnectorCache>(MAX_CACHED_CONNECTORS,0);
+
 	private String factoryName=null,mapName=null;
 	private Object key=null;
 	private transient Connector conn;
-	private transient AccumuloSortedMapFactory fact;
-	private transient AccumuloSortedMap map;
 
 	public ForeignKey(Connector c, String factory_name, String table_name,Object key) {
 		conn=c;
@@ -55,32 +77,184 @@ public class ForeignKey<V> implements Serializable {
 		return resolve();
 	}
 	public V resolve() throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
+		checkResolvable();
+		if(key == null)
+			return null;
+		AccumuloSortedMap map = targetMap();
+		if(map == null)
+			return null;
+		return (V) map.get(key);
+	}
+
+	private void checkResolvable() throws InstantiationException{
 		if(conn == null)
 			throw new InstantiationException("ForeignKey: Must set connection before resolve()");
 		if(mapName == null)
 			throw new InstantiationException("ForeignKey: table name can't be null");
-		if(key == null)
-			return null;
-		if(map == null){
-			if(factoryName != null){
-				if(fact ==null)
-					fact = new AccumuloSortedMapFactory(conn,factoryName);
-				if(!fact.containsMap(mapName))
-					return null;
-				map=fact.makeMap(mapName);
+	}
+
+	/**
+	 * @return the cached handle of the map this key points to, or null if the factory doesn't contain the map
+	 */
+	protected AccumuloSortedMap targetMap() throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
+		ConnectorCache cc = cacheOf(conn);
+		Map<String,AccumuloSortedMap> maps = cc.maps;
+		String cacheKey = factoryName == null ? mapName : factoryName+"/"+mapName;
+		AccumuloSortedMap map = maps.get(cacheKey);
+		if(map != null)
+			return map;
+		if(factoryName != null){
+			Map<String,AccumuloSortedMapFactory> factories = cc.factories;
+			AccumuloSortedMapFactory fact = factories.get(factoryName);
+			if(fact == null){
+				fact = new AccumuloSortedMapFactory(conn,factoryName);
+				factories.put(factoryName, fact);
 			}
-			else{
-				map = new AccumuloSortedMap(conn,mapName,false,false);
+			// not cached, since the map may be created later. the factory's metadata cache may predate it
+			if(!fact.containsMap(mapName) && !refreshedContainsMap(fact,cc.misses,cacheKey))
+				return null;
+			map = fact.makeMap(mapName);
+		}
+		else{
+			map = new AccumuloSortedMap(conn,mapName,false,false);
+		}
+		maps.put(cacheKey, map);
+		return map;
+	}
+
+	/**
+	 * refreshes fact and checks for the map again, unless it was missing from a refresh within the factory's TTL
+	 */
+	private boolean refreshedContainsMap(AccumuloSortedMapFactory fact,Map<String,Long> misses,String cacheKey){
+		long ttl = fact.getMetadataCacheTtlMs();
+		// without a cache containsMap() already read the metadata table
+		if(ttl <= 0)
+			return false;
+		Long missedMs = misses.get(cacheKey);
+		long now = System.currentTimeMillis();
+		if(missedMs != null && now - missedMs <= ttl)
+			return false;
+		if(fact.refresh().containsKey(mapName)){
+			misses.remove(cacheKey);
+			return true;
+		}
+		misses.put(cacheKey, now);
+		return false;
+	}
+
+	private static ConnectorCache cacheOf(Connector c){
+		synchronized(connectorCaches){
+			ConnectorCache cc = connectorCaches.get(c);
+			if(cc == null){
+				cc = new ConnectorCache();
+				connectorCaches.put(c, cc);
 			}
+			return cc;
 		}
-		return (V) map.get(key);
 	}
+
+	/**
+	 * drops the cached map and factory handles and remembered missing maps of c, eg after a target map's metadata changed
+	 */
+	public static void invalidateCache(Connector c){
+		connectorCaches.invalidate(c);
+	}
+	/**
+	 * drops all cached map and factory handles and remembered missing maps
+	 */
+	public static void invalidateCache(){
+		connectorCaches.clear();
+	}
+
+	/**
+	 * resolves many ForeignKeys at once. keys are grouped by target map, and each group is 
+	 * looked up with one getBatch() call, ie one BatchScanner, instead of a get() per key.
+	 * 
+	 * @param fks ForeignKeys with a connector set
+	 * @return a map of ForeignKey->value for the keys that were found. missing keys and null keys are left out
+	 */
+	public static Map<ForeignKey,Object> resolveAll(Collection<? extends ForeignKey> fks) throws InstantiationException, IllegalAccessException, ClassNotFoundException, AccumuloException, AccumuloSecurityException{
+		// map handles are shared per Connector, so the same instance means the same target
+		Map<AccumuloSortedMap,List<ForeignKey>> byMap = new IdentityHashMap<AccumuloSortedMap,List<ForeignKey>>();
+		for(ForeignKey fk : fks){
+			if(fk == null)
+				continue;
+			fk.checkResolvable();
+			if(fk.key == null)
+				continue;
+			AccumuloSortedMap map = fk.targetMap();
+			if(map == null)
+				continue;
+			List<ForeignKey> group = byMap.get(map);
+			if(group == null){
+				group = new ArrayList<ForeignKey>();
+				byMap.put(map, group);
+			}
+			group.add(fk);
+		}
+		Map<ForeignKey,Object> resolved = new HashMap<ForeignKey,Object>();
+		for(Map.Entry<AccumuloSortedMap,List<ForeignKey>> e : byMap.entrySet()){
+			List<Object> keys = new ArrayList<Object>(e.getValue().size());
+			for(ForeignKey fk : e.getValue())
+				keys.add(fk.key);
+			Map<Object,Object> found = e.getKey().getBatch(keys);
+			for(ForeignKey fk : e.getValue()){
+				Object v = found.get(fk.key);
+				if(v != null)
+					resolved.put(fk, v);
+			}
+		}
+		return resolved;
+	}
+
+	/**
+	 * sets the connector of each ForeignKey to c, then calls resolveAll(fks)
+	 */
+	public static Map<ForeignKey,Object> resolveAll(Collection<? extends ForeignKey> fks,Connector c) throws InstantiationException, IllegalAccessException, ClassNotFoundException, AccumuloException, AccumuloSecurityException{
+		for(ForeignKey fk : fks){
+			if(fk != null)
+				fk.setConnector(c);
+		}
+		return resolveAll(fks);
+	}
+
 	public void setConnector(Connector c){
 		conn = c;
 	}
 	public Connector getConnector(){
 		return conn;
 	}
+	public String getFactoryName(){
+		return factoryName;
+	}
+	public String getMapName(){
+		return mapName;
+	}
+	public Object getKey(){
+		return key;
+	}
+
+	/**
+	 * ForeignKeys are equal if they point to the same key of the same map. the connector is not compared.
+	 */
+	@Override
+	public boolean equals(Object o){
+		if(this == o)
+			return true;
+		if(!(o instanceof ForeignKey))
+			return false;
+		ForeignKey fk = (ForeignKey) o;
+		return Objects.equals(factoryName, fk.factoryName) && Objects.equals(mapName, fk.mapName) && Objects.equals(key, fk.key);
+	}
+	@Override
+	public int hashCode(){
+		return Objects.hash(factoryName,mapName,key);
+	}
+	@Override
+	public String toString(){
+		return "ForeignKey("+(factoryName == null ? "" : factoryName+"/")+mapName+","+key+")";
+	}
+
 	/**
 	 * calls link.resolve() if link is a ForeignKey, otherwise null
 	 * @param link
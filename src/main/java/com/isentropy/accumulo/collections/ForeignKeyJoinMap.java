@@ -0,0 +1,271 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.isentropy.accumulo.collections;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Map.Entry;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.Scanner;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+
+import com.isentropy.accumulo.util.Util;
+
+/**
+ * a read only view of a map whose values are ForeignKeys, with each value replaced by the value it points to. 
+ * values that aren't ForeignKeys pass through, and ForeignKeys that don't resolve become null.
+ * 
+ * iteration, streams and getBatch() read the parent in pages of pageSize entries and resolve each page with
+ * ForeignKey.resolveAll(), ie one BatchScanner per target map per page. 
+ * in merge join mode, each target map is instead scanned forward from the first key referenced, 
+ * in step with the parent. this is faster when the referenced keys follow the parent's key order 
+ * and are dense in the target map, eg when both maps share their keys. keys that go backwards are looked up with get().
+ * 
+ * the join is done by the client: tablet server iterators have no credentials to read other tables. 
+ * server side aggregates of this map (valueStats(), etc) see the ForeignKeys.
+ * see AccumuloSortedMap.joinForeignKeys()
+ */
+public class ForeignKeyJoinMap<K,V> extends ScannerDerivedMap<K,V>{
+	private final int pageSize;
+	private final boolean mergeJoin;
+
+	public ForeignKeyJoinMap(AccumuloSortedMap<K,?> parent, int pageSize, boolean mergeJoin) {
+		super(parent, parent.getValueSerde());
+		if(pageSize < 1)
+			throw new IllegalArgumentException("pageSize must be positive");
+		this.pageSize = pageSize;
+		this.mergeJoin = mergeJoin;
+	}
+
+	@Override
+	protected Scanner getScanner() throws TableNotFoundException {
+		return parent.getScanner();
+	}
+	@Override
+	protected Scanner getMultiScanner() throws TableNotFoundException {
+		return parent.getMultiScanner();
+	}
+	@Override
+	protected BatchScanner getBatchScanner(int numThreads) throws TableNotFoundException {
+		return parent.getBatchScanner(numThreads);
+	}
+	@Override
+	protected BatchScanner getMultiBatchScanner(int numThreads) throws TableNotFoundException {
+		return parent.getMultiBatchScanner(numThreads);
+	}
+	@Override 
+	protected int nextIteratorPriority(){
+		return parent.nextIteratorPriority();
+	}
+
+	/**
+	 * resolves a single value. used by get()
+	 */
+	@Override
+	protected V deserializeValue(byte[] b){
+		Object o = super.deserializeValue(b);
+		if(!(o instanceof ForeignKey))
+			return (V) o;
+		try {
+			return (V) ((ForeignKey) o).resolve();
+		} catch (Exception e) {
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	protected AccumuloSortedMap<K, V> subMap(K fromKey, boolean inc1, K toKey, boolean inc2) {
+		return new ForeignKeyJoinMap<K,V>(parent.subMap(fromKey, inc1, toKey, inc2), pageSize, mergeJoin);
+	}
+
+	/**
+	 * compares resolved values on the client, since the stored values are ForeignKeys
+	 */
+	@Override
+	public boolean containsValue(Object value) {
+		for(Iterator<Entry<K,V>> it = iterator();it.hasNext();){
+			V v = it.next().getValue();
+			if(value == null ? v == null : value.equals(v))
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * iterator(), streams and publisher() read the scan in pages, see nextPage()
+	 */
+	@Override
+	protected Iterator<Entry<K, V>> entryIterator(final Iterator<Entry<Key, Value>> raw){
+		// merge join cursors, by target map handle
+		final Map<AccumuloSortedMap,MergeCursor> cursors = new IdentityHashMap<AccumuloSortedMap,MergeCursor>();
+		return new Iterator<Entry<K,V>>(){
+			Iterator<Entry<K,V>> page = Collections.emptyIterator();
+			@Override
+			public boolean hasNext() {
+				if(!page.hasNext() && raw.hasNext())
+					page = nextPage(raw, cursors);
+				return page.hasNext();
+			}
+			@Override
+			public Entry<K, V> next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return page.next();
+			}
+		};
+	}
+
+	/**
+	 * looks up the keys in the parent, and resolves the ForeignKeys found with 
+	 * ForeignKey.resolveAll() in pages of pageSize entries. getBatch() uses this too.
+	 */
+	@Override
+	public Iterator<Entry<K,V>> getBatchIterator(Collection<? extends K> keys){
+		final Iterator<? extends Entry<K,?>> raw = parent.getBatchIterator(keys);
+		return new Iterator<Entry<K,V>>(){
+			Iterator<Entry<K,V>> page = Collections.emptyIterator();
+			@Override
+			public boolean hasNext() {
+				if(!page.hasNext() && raw.hasNext()){
+					List<K> pageKeys = new ArrayList<K>(pageSize);
+					List<Object> values = new ArrayList<Object>(pageSize);
+					while(pageKeys.size() < pageSize && raw.hasNext()){
+						Entry<K,?> e = raw.next();
+						pageKeys.add(e.getKey());
+						values.add(e.getValue());
+					}
+					// batch results are unordered, so merge join doesn't apply
+					page = resolvePage(pageKeys, values, null);
+				}
+				return page.hasNext();
+			}
+			@Override
+			public Entry<K, V> next() {
+				if(!hasNext())
+					throw new NoSuchElementException();
+				return page.next();
+			}
+		};
+	}
+
+	private Iterator<Entry<K,V>> nextPage(Iterator<Entry<Key,Value>> raw, Map<AccumuloSortedMap,MergeCursor> cursors){
+		List<K> keys = new ArrayList<K>(pageSize);
+		List<Object> values = new ArrayList<Object>(pageSize);
+		while(keys.size() < pageSize && raw.hasNext()){
+			Entry<Key,Value> e = raw.next();
+			keys.add((K) Util.deserialize(getKeySerde(), e.getKey().getRowData()));
+			values.add(super.deserializeValue(e.getValue().get()));
+		}
+		return resolvePage(keys, values, mergeJoin ? cursors : null);
+	}
+
+	/**
+	 * @param cursors the merge join cursors, or null to resolve with ForeignKey.resolveAll()
+	 */
+	private Iterator<Entry<K,V>> resolvePage(List<K> keys, List<Object> values, Map<AccumuloSortedMap,MergeCursor> cursors){
+		List<ForeignKey> fks = new ArrayList<ForeignKey>();
+		for(Object o : values){
+			if(o instanceof ForeignKey)
+				fks.add((ForeignKey) o);
+		}
+		try{
+			Map<ForeignKey,Object> resolved = cursors != null ? mergeResolve(fks, cursors) : ForeignKey.resolveAll(fks);
+			List<Entry<K,V>> page = new ArrayList<Entry<K,V>>(keys.size());
+			for(int i=0;i<keys.size();i++){
+				Object o = values.get(i);
+				V v = (V) (o instanceof ForeignKey ? resolved.get(o) : o);
+				page.add(new AbstractMap.SimpleImmutableEntry<K,V>(keys.get(i), v));
+			}
+			return page.iterator();
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Map<ForeignKey,Object> mergeResolve(List<ForeignKey> fks, Map<AccumuloSortedMap,MergeCursor> cursors) throws Exception{
+		Map<ForeignKey,Object> resolved = new HashMap<ForeignKey,Object>();
+		for(ForeignKey fk : fks){
+			if(fk.getKey() == null)
+				continue;
+			AccumuloSortedMap target = fk.targetMap();
+			if(target == null)
+				continue;
+			MergeCursor c = cursors.get(target);
+			if(c == null){
+				c = new MergeCursor(target);
+				cursors.put(target, c);
+			}
+			Object v = c.lookup(fk.getKey());
+			if(v != null)
+				resolved.put(fk, v);
+		}
+		return resolved;
+	}
+
+	/**
+	 * walks a target map forward. lookup() keys are expected in ascending order
+	 */
+	private static class MergeCursor{
+		final AccumuloSortedMap target;
+		final Comparator cmp;
+		Iterator<Entry> it = null;
+		Entry cur = null;
+		Object position = null;
+
+		MergeCursor(AccumuloSortedMap target){
+			this.target = target;
+			cmp = target.comparator();
+		}
+
+		Object lookup(Object key){
+			if(it == null){
+				it = target.tailMap(key).entrySet().iterator();
+				cur = it.hasNext() ? it.next() : null;
+			}
+			else if(cmp.compare(key, position) < 0){
+				// out of order, the cursor has passed key
+				return target.get(key);
+			}
+			position = key;
+			while(cur != null && cmp.compare(cur.getKey(), key) < 0)
+				cur = it.hasNext() ? it.next() : null;
+			if(cur != null && cmp.compare(cur.getKey(), key) == 0)
+				return cur.getValue();
+			return null;
+		}
+	}
+}
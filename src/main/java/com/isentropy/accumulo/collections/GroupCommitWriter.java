@@ -0,0 +1,275 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.BatchWriterConfig;
+import org.apache.accumulo.core.client.Connector;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Mutation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * GroupCommitWriter coalesces mutations submitted by many threads into group commits.
+ * 
+ * submit() adds the mutation to a BatchWriter and returns immediately. A background flusher thread 
+ * flushes the BatchWriter when the oldest unflushed mutation is maxLatencyMs old, or when maxBatchBytes 
+ * of mutations are pending, and then completes the futures of all mutations in the group. 
+ * If the flush fails, the futures complete exceptionally and the BatchWriter is replaced.
+ *
+ */
+public class GroupCommitWriter {
+	public static Logger log = LoggerFactory.getLogger(GroupCommitWriter.class);
+
+	/**
+	 * called once per committed group, before its futures complete, with the attachments of the group's mutations in 
+	 * submit order. exceptions are logged, and don't fail the futures, since the mutations were written.
+	 */
+	public interface CommitListener{
+		public void committed(List<Object> attachments);
+	}
+
+	private static class PendingWrite{
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		final Object attachment;
+		PendingWrite(Object attachment){
+			this.attachment = attachment;
+		}
+	}
+
+	private final Connector conn;
+	private final String table;
+	private final BatchWriterConfig config;
+	private final long maxLatencyMs,maxBatchBytes;
+	private final CommitListener listener;
+
+	private BatchWriter batchWriter;
+	// set when submit() has a mutation rejected. only the commit path replaces the writer, see commit()
+	private BatchWriter brokenWriter = null;
+	private List<PendingWrite> pending = new ArrayList<PendingWrite>();
+	private long pendingBytes = 0;
+	private long oldestPendingMs = 0;
+	private boolean closed = false;
+	private final Thread flusher;
+
+	public GroupCommitWriter(Connector conn, String table, BatchWriterConfig config, long maxLatencyMs, long maxBatchBytes) throws TableNotFoundException {
+		this(conn, table, config, maxLatencyMs, maxBatchBytes, null);
+	}
+	/**
+	 * @param listener called with each committed group, or null
+	 */
+	public GroupCommitWriter(Connector conn, String table, BatchWriterConfig config, long maxLatencyMs, long maxBatchBytes, CommitListener listener) throws TableNotFoundException {
+		this.conn = conn;
+		this.table = table;
+		this.config = config;
+		this.maxLatencyMs = maxLatencyMs;
+		this.maxBatchBytes = maxBatchBytes;
+		this.listener = listener;
+		batchWriter = conn.createBatchWriter(table, config);
+		flusher = new Thread(new Runnable(){
+			@Override
+			public void run() {
+				flushLoop();
+			}
+		}, "GroupCommitWriter-"+table);
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * @param m
+	 * @return a future that completes when m has been flushed to the tablet servers
+	 */
+	public CompletableFuture<Void> submit(Mutation m){
+		return submit(m, null);
+	}
+
+	/**
+	 * @param attachment passed to the CommitListener when m's group is committed
+	 * @return a future that completes when m has been flushed to the tablet servers
+	 */
+	public synchronized CompletableFuture<Void> submit(Mutation m, Object attachment){
+		PendingWrite w = new PendingWrite(attachment);
+		if(closed){
+			w.future.completeExceptionally(new IllegalStateException("GroupCommitWriter is closed"));
+			return w.future;
+		}
+		try {
+			batchWriter.addMutation(m);
+		} catch (MutationsRejectedException e) {
+			log.error(e.getMessage());
+			w.future.completeExceptionally(e);
+			// the flusher may be committing on this writer. it fails the pending futures and replaces the writer
+			brokenWriter = batchWriter;
+			notifyAll();
+			return w.future;
+		}
+		if(pending.isEmpty()){
+			oldestPendingMs = System.currentTimeMillis();
+			notifyAll();
+		}
+		pending.add(w);
+		pendingBytes += m.numBytes();
+		if(pendingBytes >= maxBatchBytes)
+			notifyAll();
+		return w.future;
+	}
+
+	/**
+	 * flushes all submitted mutations in the calling thread
+	 * @throws MutationsRejectedException
+	 */
+	public void flush() throws MutationsRejectedException{
+		List<PendingWrite> group;
+		BatchWriter bw;
+		synchronized(this){
+			group = takePending();
+			bw = batchWriter;
+		}
+		commit(group,bw);
+	}
+
+	/**
+	 * flushes all submitted mutations and stops the flusher thread
+	 * @throws MutationsRejectedException
+	 */
+	public void close() throws MutationsRejectedException{
+		synchronized(this){
+			closed = true;
+			notifyAll();
+		}
+		try {
+			flusher.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+		batchWriter.close();
+	}
+
+	private List<PendingWrite> takePending(){
+		List<PendingWrite> group = pending;
+		pending = new ArrayList<PendingWrite>();
+		pendingBytes = 0;
+		return group;
+	}
+
+	private void commit(List<PendingWrite> group, BatchWriter bw) throws MutationsRejectedException{
+		synchronized(this){
+			if(group.isEmpty() && bw != brokenWriter)
+				return;
+		}
+		try{
+			// mutations submitted while flushing are flushed too, but they are acknowledged with the next group
+			bw.flush();
+		}
+		catch(MutationsRejectedException e){
+			log.error(e.getMessage());
+			for(PendingWrite w : group)
+				w.future.completeExceptionally(e);
+			synchronized(this){
+				if(bw == batchWriter)
+					failPending(e);
+			}
+			throw e;
+		}
+		synchronized(this){
+			// a writer that rejected a mutation is replaced even if it still flushes
+			if(bw == brokenWriter && bw == batchWriter)
+				failPending(new IllegalStateException("BatchWriter rejected a mutation"));
+		}
+		if(listener != null && !group.isEmpty()){
+			List<Object> attachments = new ArrayList<Object>(group.size());
+			for(PendingWrite w : group)
+				attachments.add(w.attachment);
+			try{
+				listener.committed(attachments);
+			}
+			catch(RuntimeException e){
+				log.error("CommitListener failed: "+e.getMessage());
+			}
+		}
+		for(PendingWrite w : group)
+			w.future.complete(null);
+	}
+
+	/*
+	 * the BatchWriter must be replaced after a MutationsRejectedException, which discards every mutation 
+	 * it still holds. must be called holding the lock.
+	 */
+	private void failPending(Exception e){
+		for(PendingWrite w : takePending())
+			w.future.completeExceptionally(e);
+		try {
+			batchWriter.close();
+		} catch (MutationsRejectedException e1) {
+			log.warn("closing rejected BatchWriter: "+e1.getMessage());
+		}
+		brokenWriter = null;
+		try {
+			batchWriter = conn.createBatchWriter(table, config);
+		} catch (TableNotFoundException e1) {
+			log.error(e1.getMessage());
+			throw new RuntimeException(e1);
+		}
+	}
+
+	private void flushLoop(){
+		while(true){
+			List<PendingWrite> group;
+			BatchWriter bw;
+			synchronized(this){
+				try {
+					while(!closed && batchWriter != brokenWriter){
+						if(!pending.isEmpty()){
+							long wait = oldestPendingMs + maxLatencyMs - System.currentTimeMillis();
+							if(wait <= 0 || pendingBytes >= maxBatchBytes)
+								break;
+							wait(wait);
+						}
+						else{
+							wait();
+						}
+					}
+				} catch (InterruptedException e) {
+					return;
+				}
+				if(closed)
+					return;
+				group = takePending();
+				bw = batchWriter;
+			}
+			try {
+				commit(group,bw);
+			} catch (MutationsRejectedException e) {
+				// futures were completed exceptionally
+			}
+		}
+	}
+}
@@ -23,6 +23,7 @@ package com.isentropy.accumulo.collections;
 
 import java.util.Map;
 
+import org.apache.accumulo.core.client.BatchScanner;
 import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.IteratorSetting;
 import org.apache.accumulo.core.client.Scanner;
@@ -39,11 +40,16 @@ public class IteratorStackedSubmap<K,V> extends ScannerDerivedMap<K,V>{
 	private Class<? extends SortedKeyValueIterator<Key, Value>> iterator;
 	private Map<String,String> iterator_options;
 	private boolean isAggregate = false;
+	// built once, since addScanIterator() copies it
+	private final IteratorSetting cfg;
 	
 	public IteratorStackedSubmap(AccumuloSortedMap<K,?> parent, Class<? extends SortedKeyValueIterator<Key, Value>> iterator, Map<String,String> iterator_options, SerDe derivedMapValueSerde) {
 		super(parent,derivedMapValueSerde);
 		this.iterator = iterator;
 		this.iterator_options = iterator_options;
+		cfg = new IteratorSetting(parent.nextIteratorPriority(), iterator);
+		cfg.setName(iterator.getSimpleName()+parent.nextIteratorPriority());
+		cfg.addOptions(iterator_options);
 	}
 	
 	@Override 
@@ -56,18 +62,26 @@ public class IteratorStackedSubmap<K,V> extends ScannerDerivedMap<K,V>{
 		if(isAggregate)
 			return getMultiScanner();
 		Scanner s = parent.getScanner();
-		IteratorSetting cfg = new IteratorSetting(parent.nextIteratorPriority(), iterator);
-		cfg.setName(iterator.getSimpleName()+parent.nextIteratorPriority());
-		cfg.addOptions(iterator_options);
 		s.addScanIterator(cfg);
 		return s;
 	}
 	@Override
 	protected Scanner getMultiScanner() throws TableNotFoundException{
 		Scanner s = parent.getMultiScanner();
-		IteratorSetting cfg = new IteratorSetting(parent.nextIteratorPriority(), iterator);
-		cfg.setName(iterator.getSimpleName()+parent.nextIteratorPriority());
-		cfg.addOptions(iterator_options);
+		s.addScanIterator(cfg);
+		return s;
+	}
+	@Override
+	protected BatchScanner getBatchScanner(int numThreads) throws TableNotFoundException{
+		if(isAggregate)
+			return getMultiBatchScanner(numThreads);
+		BatchScanner s = parent.getBatchScanner(numThreads);
+		s.addScanIterator(cfg);
+		return s;
+	}
+	@Override
+	protected BatchScanner getMultiBatchScanner(int numThreads) throws TableNotFoundException{
+		BatchScanner s = parent.getMultiBatchScanner(numThreads);
 		s.addScanIterator(cfg);
 		return s;
 	}
@@ -23,6 +23,8 @@ limitations under the License.
 package com.isentropy.accumulo.collections;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -45,10 +47,18 @@ import com.isentropy.accumulo.collections.io.LongBinarySerde;
 import com.isentropy.accumulo.collections.io.SerDe;
 import com.isentropy.accumulo.collections.mappers.ChecksumMapper;
 import com.isentropy.accumulo.collections.mappers.CountsDerivedMapper;
+import com.isentropy.accumulo.collections.mappers.DistinctCountMapper;
+import com.isentropy.accumulo.collections.mappers.HeavyHittersMapper;
+import com.isentropy.accumulo.collections.mappers.QuantileMapper;
 import com.isentropy.accumulo.collections.mappers.StatsDerivedMapper;
+import com.isentropy.accumulo.collections.mappers.TopKMapper;
 import com.isentropy.accumulo.iterators.AggregateIterator;
 import com.isentropy.accumulo.iterators.LongCountAggregateIterator;
 import com.isentropy.accumulo.iterators.StatsAggregateIterator;
+import com.isentropy.accumulo.iterators.TopKAggregateIterator;
+import com.isentropy.accumulo.util.HyperLogLog;
+import com.isentropy.accumulo.util.QuantileSketch;
+import com.isentropy.accumulo.util.SpaceSaving;
 
 /**
  * This class contains useful server-side aggregation functions
@@ -105,5 +115,127 @@ public class MapAggregates {
 		return checksum(map, false);
 	}
 
+	/**
+	 * builds a HyperLogLog sketch of the map's values (or keys) on each tablet, and merges them. 
+	 * only the sketches, 2^precision bytes per tablet, are sent to the client. 
+	 * values are compared in serialized form.
+	 * 
+	 * @param countKeys if true, sketch keys instead of values
+	 * @param precision see HyperLogLog
+	 */
+	public static HyperLogLog distinctSketch(AccumuloSortedMap map,boolean countKeys,int precision,boolean includeMultipleValues){
+		AccumuloSortedMap tabletSketches = map.deriveMap(new DistinctCountMapper(countKeys,precision),includeMultipleValues);
+		HyperLogLog merged = new HyperLogLog(precision);
+		Set<Map.Entry> s = tabletSketches.entrySet();
+		for(Map.Entry e : s){
+			merged.merge((HyperLogLog) e.getValue());
+		}
+		return merged;
+	}
+	/**
+	 * estimates the number of distinct values in the map, see distinctSketch()
+	 */
+	public static long distinctValues(AccumuloSortedMap map,boolean includeMultipleValues){
+		return distinctSketch(map,false,HyperLogLog.DEFAULT_PRECISION,includeMultipleValues).cardinality();
+	}
+	public static long distinctValues(AccumuloSortedMap map){
+		return distinctValues(map,false);
+	}
+	/**
+	 * estimates the number of distinct keys in the map, see distinctSketch(). 
+	 * useful for derived maps, since a plain map's key count is exact from count()
+	 */
+	public static long distinctKeys(AccumuloSortedMap map){
+		return distinctSketch(map,true,HyperLogLog.DEFAULT_PRECISION,false).cardinality();
+	}
+
+	/**
+	 * builds a QuantileSketch of the map values that are instances of Number on each tablet, and merges them. 
+	 * tablet server memory is bounded by k regardless of the number of entries.
+	 * 
+	 * @param k see QuantileSketch
+	 */
+	public static QuantileSketch quantileSketch(AccumuloSortedMap map,int k,boolean includeMultipleValues){
+		AccumuloSortedMap tabletSketches = map.deriveMap(new QuantileMapper(k),includeMultipleValues);
+		QuantileSketch merged = new QuantileSketch(k);
+		Set<Map.Entry> s = tabletSketches.entrySet();
+		for(Map.Entry e : s){
+			merged.merge((QuantileSketch) e.getValue());
+		}
+		return merged;
+	}
+	public static QuantileSketch quantileSketch(AccumuloSortedMap map){
+		return quantileSketch(map,QuantileSketch.DEFAULT_K,false);
+	}
+	/**
+	 * estimates the q-quantile of the map's numeric values, see quantileSketch()
+	 * @param q between 0 and 1, eg 0.99 for p99
+	 */
+	public static double quantile(AccumuloSortedMap map,double q){
+		return quantileSketch(map).quantile(q);
+	}
+	/**
+	 * estimates several quantiles with one scan of the map, see quantileSketch()
+	 */
+	public static double[] quantiles(AccumuloSortedMap map,double ... qs){
+		return quantileSketch(map).quantiles(qs);
+	}
 
+	/**
+	 * finds the k entries with the largest values. each tablet keeps a heap of k entries, 
+	 * and only those are sent to the client to be merged.
+	 * 
+	 * @param comparator compares deserialized values, and must be on the tablet server classpath. 
+	 * if null, values that are Numbers are compared numerically and others are ignored.
+	 * @return up to k (key,value) entries, largest value first
+	 */
+	public static List<Map.Entry> topK(AccumuloSortedMap map,int k,Class<? extends Comparator> comparator,boolean includeMultipleValues){
+		AccumuloSortedMap tabletTops = map.deriveMap(new TopKMapper(k,comparator),includeMultipleValues);
+		final Comparator vc;
+		try{
+			vc = comparator == null ? new TopKAggregateIterator.NumberComparator() : comparator.newInstance();
+		}
+		catch(Exception e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+		List<Map.Entry> all = new ArrayList<Map.Entry>();
+		Set<Map.Entry> s = tabletTops.entrySet();
+		for(Map.Entry e : s){
+			all.addAll((List<Map.Entry>) e.getValue());
+		}
+		Collections.sort(all, new Comparator<Map.Entry>(){
+			@Override
+			public int compare(Map.Entry a, Map.Entry b) {
+				return vc.compare(b.getValue(), a.getValue());
+			}
+		});
+		return all.size() > k ? new ArrayList<Map.Entry>(all.subList(0, k)) : all;
+	}
+	public static List<Map.Entry> topK(AccumuloSortedMap map,int k){
+		return topK(map,k,null,false);
+	}
+
+	/**
+	 * builds a SpaceSaving summary of the map's values on each tablet, and merges them. 
+	 * values are compared in deserialized form with equals().
+	 * 
+	 * @param capacity see SpaceSaving
+	 */
+	public static SpaceSaving heavyHittersSummary(AccumuloSortedMap map,int capacity,boolean includeMultipleValues){
+		AccumuloSortedMap tabletSummaries = map.deriveMap(new HeavyHittersMapper(capacity),includeMultipleValues);
+		SpaceSaving merged = new SpaceSaving(capacity);
+		Set<Map.Entry> s = tabletSummaries.entrySet();
+		for(Map.Entry e : s){
+			merged.merge((SpaceSaving) e.getValue());
+		}
+		return merged;
+	}
+	/**
+	 * estimates the k most frequent values, see heavyHittersSummary()
+	 * @return up to k (value, estimated count) entries, most frequent first
+	 */
+	public static List<Map.Entry<Object,Long>> heavyHitters(AccumuloSortedMap map,int k){
+		return heavyHittersSummary(map,Math.max(SpaceSaving.DEFAULT_CAPACITY,10*k),false).top(k);
+	}
 }
@@ -23,6 +23,7 @@ package com.isentropy.accumulo.collections;
 
 import java.io.Serializable;
 
+import com.isentropy.accumulo.iterators.SamplingFilter;
 import com.isentropy.accumulo.util.Util;
 
 public class Sampler implements Serializable{
@@ -32,23 +33,39 @@ public class Sampler implements Serializable{
 	protected long fromTs=-1,toTs=-1;
 	protected String samplingSeed;
 	protected double fromFractionalHash,toFractionalHash;
+	// null means SamplingFilter.HASH_SHA256, so Samplers serialized before this field existed still reproduce
+	protected String hash;
 	
+	/**
+	 * samples with a random seed, using the faster SamplingFilter.HASH_MURMUR
+	 */
 	public Sampler(double fraction){
-		init(Util.randomHexString(20),0,fraction,-1,-1);
+		init(Util.randomHexString(20),0,fraction,-1,-1,SamplingFilter.HASH_MURMUR);
 	}
 
 	public Sampler(String samplingSeed,double fromFractionalHash,double toFractionalHash,long fromTs,long toTs){
-		init(samplingSeed,fromFractionalHash,toFractionalHash,fromTs,toTs);
+		init(samplingSeed,fromFractionalHash,toFractionalHash,fromTs,toTs,null);
+	}
+
+	/**
+	 * @param hash SamplingFilter.HASH_SHA256 or SamplingFilter.HASH_MURMUR
+	 */
+	public Sampler(String samplingSeed,double fromFractionalHash,double toFractionalHash,long fromTs,long toTs,String hash){
+		init(samplingSeed,fromFractionalHash,toFractionalHash,fromTs,toTs,hash);
 	}
 	
-	protected void init(String samplingSeed,double fromFractionalHash,double toFractionalHash,long fromTs,long toTs){
+	protected void init(String samplingSeed,double fromFractionalHash,double toFractionalHash,long fromTs,long toTs,String hash){
 		this.samplingSeed = samplingSeed;
 		this.fromFractionalHash = fromFractionalHash;
 		this.toFractionalHash = toFractionalHash;
 		this.fromTs = fromTs;
 		this.toTs = toTs;
+		this.hash = hash;
 	}
 	
+	public String getHash(){
+		return hash == null ? SamplingFilter.HASH_SHA256 : hash;
+	}
 	public String getSamplingSeed(){
 		return samplingSeed;
 	}
@@ -69,6 +86,7 @@ public class Sampler implements Serializable{
 	public String toString(){
 		return "samplingSeed = "+samplingSeed+"\n"+
 				"fractional hash range = ["+fromFractionalHash+", "+toFractionalHash+"]\n"+
-				"timestamp range = ["+fromTs+", "+toTs+"]";
+				"timestamp range = ["+fromTs+", "+toTs+"]\n"+
+				"hash = "+getHash();
 	}
 }
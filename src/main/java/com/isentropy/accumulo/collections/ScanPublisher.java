@@ -0,0 +1,216 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections;
+
+import java.util.Iterator;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ScanPublisher is a reactive-streams Publisher of the elements of a scan. 
+ * 
+ * Each subscription opens its own iterator from the source and runs two threads: a fetcher that reads the 
+ * iterator into a buffer of up to readAhead elements, and an emitter that passes buffered elements to the 
+ * Subscriber as it requests them. So the next Scanner batch is fetched and deserialized while the Subscriber 
+ * processes the previous one. When the buffer is full the fetcher stops reading, and so stops the scan.
+ * 
+ * If the source iterator is AutoCloseable, it is closed when the scan ends or the subscription is cancelled.
+ */
+public class ScanPublisher<T> implements Publisher<T> {
+	public static Logger log = LoggerFactory.getLogger(ScanPublisher.class);
+	private static final long POLL_MS = 100;
+	private static final Object END = new Object();
+
+	private static class Failure{
+		final Throwable cause;
+		Failure(Throwable cause){
+			this.cause = cause;
+		}
+	}
+
+	private final Callable<? extends Iterator<? extends T>> source;
+	private final int readAhead;
+
+	/**
+	 * @param source called once per subscription to open the scan
+	 * @param readAhead the maximum number of elements fetched ahead of the Subscriber's demand
+	 */
+	public ScanPublisher(Callable<? extends Iterator<? extends T>> source,int readAhead){
+		if(readAhead < 1)
+			throw new IllegalArgumentException("readAhead must be positive");
+		this.source = source;
+		this.readAhead = readAhead;
+	}
+
+	@Override
+	public void subscribe(Subscriber<? super T> subscriber) {
+		if(subscriber == null)
+			throw new NullPointerException();
+		ScanSubscription s = new ScanSubscription(subscriber);
+		subscriber.onSubscribe(s);
+		s.start();
+	}
+
+	private class ScanSubscription implements Subscription{
+		private final Subscriber<? super T> subscriber;
+		private final BlockingQueue<Object> buffer = new ArrayBlockingQueue<Object>(readAhead);
+		private volatile boolean cancelled = false;
+		// guarded by this
+		private long demand = 0;
+		private Throwable requestError = null;
+		private Thread fetcher,emitter;
+
+		ScanSubscription(Subscriber<? super T> subscriber){
+			this.subscriber = subscriber;
+		}
+
+		void start(){
+			fetcher = new Thread(new Runnable(){
+				@Override
+				public void run() {
+					fetch();
+				}
+			}, "ScanPublisher-fetcher");
+			emitter = new Thread(new Runnable(){
+				@Override
+				public void run() {
+					emit();
+				}
+			}, "ScanPublisher-emitter");
+			fetcher.setDaemon(true);
+			emitter.setDaemon(true);
+			fetcher.start();
+			emitter.start();
+		}
+
+		@Override
+		public synchronized void request(long n) {
+			if(n <= 0)
+				requestError = new IllegalArgumentException("request() must be positive, was "+n);
+			else
+				demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+			notifyAll();
+		}
+
+		@Override
+		public synchronized void cancel() {
+			cancelled = true;
+			notifyAll();
+		}
+
+		/**
+		 * @return false if cancelled before o was buffered
+		 */
+		private boolean buffer(Object o) throws InterruptedException{
+			while(!buffer.offer(o, POLL_MS, TimeUnit.MILLISECONDS)){
+				if(cancelled)
+					return false;
+			}
+			return true;
+		}
+
+		private void fetch(){
+			Iterator<? extends T> it = null;
+			try{
+				it = source.call();
+				while(!cancelled && it.hasNext()){
+					if(!buffer(it.next()))
+						return;
+				}
+				buffer(END);
+			}
+			catch(Throwable t){
+				log.error(t.getMessage());
+				try {
+					buffer(new Failure(t));
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+			finally{
+				if(it instanceof AutoCloseable){
+					try {
+						((AutoCloseable) it).close();
+					} catch (Exception e) {
+						log.error(e.getMessage());
+					}
+				}
+			}
+		}
+
+		private void emit(){
+			try{
+				while(true){
+					synchronized(this){
+						while(demand == 0 && requestError == null && !cancelled)
+							wait();
+						if(cancelled)
+							return;
+						if(requestError != null){
+							cancelled = true;
+							subscriber.onError(requestError);
+							return;
+						}
+					}
+					Object o;
+					while((o = buffer.poll(POLL_MS, TimeUnit.MILLISECONDS)) == null){
+						if(cancelled)
+							return;
+					}
+					if(o == END){
+						cancelled = true;
+						subscriber.onComplete();
+						return;
+					}
+					if(o instanceof Failure){
+						cancelled = true;
+						subscriber.onError(((Failure) o).cause);
+						return;
+					}
+					synchronized(this){
+						if(demand != Long.MAX_VALUE)
+							demand--;
+					}
+					subscriber.onNext((T) o);
+				}
+			}
+			catch(InterruptedException e){
+				cancelled = true;
+				Thread.currentThread().interrupt();
+			}
+			catch(RuntimeException e){
+				// the Subscriber violated the spec by throwing. stop the scan
+				log.error(e.getMessage());
+				cancelled = true;
+			}
+		}
+	}
+}
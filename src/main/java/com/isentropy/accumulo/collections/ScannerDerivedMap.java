@@ -74,6 +74,14 @@ public abstract class ScannerDerivedMap<K,V> extends AccumuloSortedMap<K,V>{
 	protected Connector getConnector() {
 		return parent.getConnector();
 	}	
+	@Override
+	protected int scannerGeneration(){
+		return parent.scannerGeneration();
+	}
+	@Override
+	protected void invalidatePooledScanners(){
+		parent.invalidatePooledScanners();
+	}
 
 	@Override
 	public String getTable(){
@@ -0,0 +1,190 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.isentropy.accumulo.collections;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.function.Function;
+
+import org.apache.accumulo.core.client.BatchScanner;
+import org.apache.accumulo.core.client.BatchWriter;
+import org.apache.accumulo.core.client.MutationsRejectedException;
+import org.apache.accumulo.core.client.TableNotFoundException;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Mutation;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.security.ColumnVisibility;
+import org.apache.hadoop.io.Text;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.isentropy.accumulo.collections.io.SerDe;
+import com.isentropy.accumulo.util.Util;
+
+/**
+ * an inverted index of an AccumuloSortedMap, kept in its own table. each entry of the map 
+ * is indexed by a field extracted from its value: the index row is the serialized field, and 
+ * the column qualifier is the serialized map key. see AccumuloSortedMap.addValueIndex()
+ *
+ */
+public class ValueIndex<K,V> {
+	public static Logger log = LoggerFactory.getLogger(ValueIndex.class);
+	private static final byte[] EMPTY = new byte[0];
+
+	private final AccumuloSortedMap<K,V> map;
+	private final String name,table;
+	private final Function<? super V,?> extractor;
+	private final SerDe fieldSerde;
+	private BatchWriter writer;
+
+	/**
+	 * @param extractor returns the indexed field of a value, or null to leave the entry out of the index
+	 * @param fieldSerde serializes fields. must preserve order for range queries
+	 */
+	protected ValueIndex(AccumuloSortedMap<K,V> map, String name, String table, Function<? super V,?> extractor, SerDe fieldSerde){
+		this.map = map;
+		this.name = name;
+		this.table = table;
+		this.extractor = extractor;
+		this.fieldSerde = fieldSerde;
+	}
+
+	public String getName(){
+		return name;
+	}
+	public String getTable(){
+		return table;
+	}
+	public Function<? super V,?> getExtractor(){
+		return extractor;
+	}
+	public SerDe getFieldSerde(){
+		return fieldSerde;
+	}
+
+	/**
+	 * adds mutations that move key from the field of prev to the field of value. 
+	 * prev and value can be null, for a new or removed key. call flush() to write them.
+	 */
+	protected synchronized void update(K key, V prev, V value) throws MutationsRejectedException, TableNotFoundException{
+		Object prevField = prev == null ? null : extractor.apply(prev);
+		Object field = value == null ? null : extractor.apply(value);
+		if(prevField == null && field == null)
+			return;
+		byte[] prevRow = prevField == null ? null : fieldSerde.serialize(prevField);
+		byte[] row = field == null ? null : fieldSerde.serialize(field);
+		byte[] cq = map.getKeySerde().serialize(key);
+		ColumnVisibility cv = map.getParsedColumnVisibility();
+		if(prevRow != null && (row == null || !Arrays.equals(prevRow, row))){
+			Mutation m = new Mutation(prevRow);
+			m.putDelete(EMPTY, cq, cv);
+			getWriter().addMutation(m);
+		}
+		if(row != null){
+			Mutation m = new Mutation(row);
+			m.put(EMPTY, cq, cv, EMPTY);
+			getWriter().addMutation(m);
+		}
+	}
+
+	protected synchronized void flush() throws MutationsRejectedException{
+		try{
+			if(writer != null)
+				writer.flush();
+		}
+		catch(MutationsRejectedException e){
+			close();
+			throw e;
+		}
+	}
+
+	protected synchronized void close(){
+		try{
+			if(writer != null)
+				writer.close();
+		}
+		catch(MutationsRejectedException e){
+			log.error(e.getMessage());
+		}
+		writer = null;
+	}
+
+	private BatchWriter getWriter() throws TableNotFoundException{
+		if(writer == null)
+			writer = map.getConnector().createBatchWriter(table, map.getBatchWriterConfig());
+		return writer;
+	}
+
+	/**
+	 * indexes every entry of the map. the index table should be empty.
+	 */
+	protected void build() throws MutationsRejectedException, TableNotFoundException{
+		for(Entry<K,V> e : map.entrySet())
+			update(e.getKey(), null, e.getValue());
+		flush();
+	}
+
+	/**
+	 * @return the keys whose field equals field
+	 */
+	public Set<K> keysFor(Object field){
+		return keysIn(Range.exact(new Text(fieldSerde.serialize(field))));
+	}
+
+	/**
+	 * @param from the inclusive lower bound, or null for no lower bound
+	 * @param to the exclusive upper bound, or null for no upper bound
+	 * @return the keys whose field is in [from,to)
+	 */
+	public Set<K> keysForRange(Object from, Object to){
+		Text start = from == null ? null : new Text(fieldSerde.serialize(from));
+		Text end = to == null ? null : new Text(fieldSerde.serialize(to));
+		return keysIn(new Range(start,true,end,false));
+	}
+
+	/**
+	 * looks up the index range with a BatchScanner of map.getBatchScannerThreads() threads
+	 */
+	protected Set<K> keysIn(Range r){
+		Set<K> keys = new HashSet<K>();
+		BatchScanner bs = null;
+		try{
+			bs = map.getConnector().createBatchScanner(table, map.getAuthorizations(), map.getBatchScannerThreads());
+			bs.setRanges(Collections.singletonList(r));
+			for(Entry<Key,Value> e : bs)
+				keys.add((K) Util.deserialize(map.getKeySerde(), e.getKey().getColumnQualifierData()));
+			return keys;
+		}
+		catch(TableNotFoundException e){
+			log.error(e.getMessage());
+			throw new RuntimeException(e);
+		}
+		finally{
+			if(bs != null)
+				bs.close();
+		}
+	}
+}
@@ -21,7 +21,13 @@ limitations under the License.
 */
 package com.isentropy.accumulo.collections.factory;
 
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
@@ -60,11 +66,17 @@ public class AccumuloSortedMapFactory {
 	public static final String MAP_PROPERTY_TTL="ttl";
 	
 	public static final int RANDOM_TABLE_NAME_LENGTH = 10;
+	public static final long DEFAULT_METADATA_CACHE_TTL_MS = 60000;
 
 	
 	private AccumuloSortedMap<String,Properties> tableAliasToProperties;
 	private String metadataTable;
 	private Connector conn;
+	// map name -> properties, loaded by refresh(). null until loaded or after invalidate()
+	private volatile Map<String,Properties> metadataCache = null;
+	private volatile long metadataCacheLoadedMs = 0;
+	private long metadataCacheTtlMs = DEFAULT_METADATA_CACHE_TTL_MS;
+
 	public AccumuloSortedMapFactory(Connector c, String metadataTable) throws AccumuloException, AccumuloSecurityException {
 		conn = c;
 		this.metadataTable = metadataTable;
@@ -75,15 +87,103 @@ public class AccumuloSortedMapFactory {
 		addDefaultProperty(MAP_PROPERTY_VALUE_SERDE, FixedPointSerde.class.getName());
 	}
 	
+	/**
+	 * @return a copy of the map's properties, from the metadata cache if it is enabled
+	 */
 	protected Properties getProperties(String mapName){
-		return tableAliasToProperties.get(mapName);
+		Map<String,Properties> cache = getMetadataCache();
+		if(cache == null)
+			return tableAliasToProperties.get(mapName);
+		Properties p = cache.get(mapName);
+		return p == null ? null : (Properties) p.clone();
+	}
+
+	/**
+	 * reads the map's properties from the metadata table, bypassing and updating the cache
+	 */
+	protected Properties readProperties(String mapName){
+		Properties p = tableAliasToProperties.get(mapName);
+		Map<String,Properties> cache = metadataCache;
+		if(cache != null && p != null)
+			cache.put(mapName, (Properties) p.clone());
+		return p;
+	}
+
+	/**
+	 * writes the map's properties to the metadata table and the cache
+	 */
+	protected void putProperties(String mapName,Properties p){
+		tableAliasToProperties.put(mapName, p);
+		Map<String,Properties> cache = metadataCache;
+		if(cache != null)
+			cache.put(mapName, (Properties) p.clone());
+	}
+
+	/**
+	 * @return the metadata cache, loaded with refresh() if it has expired, or null if caching is disabled
+	 */
+	private Map<String,Properties> getMetadataCache(){
+		if(metadataCacheTtlMs <= 0)
+			return null;
+		Map<String,Properties> cache = metadataCache;
+		if(cache == null || System.currentTimeMillis() - metadataCacheLoadedMs > metadataCacheTtlMs)
+			cache = refresh();
+		return cache;
+	}
+
+	/**
+	 * reloads the properties of all maps with a single scan of the metadata table. 
+	 * called when the cache is first used and when it is older than the TTL.
+	 * @return the new cache
+	 */
+	public synchronized Map<String,Properties> refresh(){
+		Map<String,Properties> cache = new ConcurrentHashMap<String,Properties>();
+		for(Entry<String,Properties> e : tableAliasToProperties.entrySet())
+			cache.put(e.getKey(), e.getValue());
+		metadataCacheLoadedMs = System.currentTimeMillis();
+		metadataCache = cache;
+		return cache;
+	}
+
+	/**
+	 * drops the metadata cache. it is reloaded on next use
+	 */
+	public void invalidate(){
+		metadataCache = null;
+	}
+
+	/**
+	 * metadata is read from a cache that is reloaded when older than ttlMs. other clients' changes 
+	 * are seen after at most ttlMs, or after refresh(). changes made through this factory are seen at once.
+	 * @param ttlMs the cache TTL. 0 disables the cache, so every lookup reads the metadata table
+	 */
+	public AccumuloSortedMapFactory setMetadataCacheTtlMs(long ttlMs){
+		metadataCacheTtlMs = ttlMs;
+		invalidate();
+		return this;
+	}
+	public long getMetadataCacheTtlMs(){
+		return metadataCacheTtlMs;
+	}
+
+	/**
+	 * @return the names of all maps with metadata in this factory
+	 */
+	public Set<String> getMapNames(){
+		Map<String,Properties> cache = getMetadataCache();
+		Set<String> names = new HashSet<String>(cache == null ? tableAliasToProperties.keySet() : cache.keySet());
+		names.remove(DEFAULT_SETTING_METATABLENAME);
+		return Collections.unmodifiableSet(names);
 	}
 	protected String createTableName(String mapName){
 		return metadataTable+"_"+mapName+"_"+ Util.randomHexString(RANDOM_TABLE_NAME_LENGTH);
 	}
 	
 	public boolean containsMap(String mapName){
-		return tableAliasToProperties.containsKey(mapName);
+		Map<String,Properties> cache = getMetadataCache();
+		if(cache == null)
+			return tableAliasToProperties.containsKey(mapName);
+		return cache.containsKey(mapName);
 	}
 
 	/**
@@ -97,18 +197,22 @@ public class AccumuloSortedMapFactory {
 	 * @throws InstantiationException 
 	 */
 	public FactoryAccumuloSortedMap makeMap(String mapName) throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
-		Properties props = tableAliasToProperties.get(DEFAULT_SETTING_METATABLENAME);
+		Properties props = getProperties(DEFAULT_SETTING_METATABLENAME);
 		if(props == null){
 			props = new Properties();
 		}
 		String tableName;
 		Properties p = getProperties(mapName);
+		if(p == null || p.getProperty(MAP_PROPERTY_TABLE_NAME) == null){
+			// the cache may predate another client's makeMap(). read the table before creating a table name
+			p = readProperties(mapName);
+		}
 		if(p != null)
 			props.putAll(p);
 		if((tableName = props.getProperty(MAP_PROPERTY_TABLE_NAME)) == null){
 			tableName = createTableName(mapName);
 			props.put(MAP_PROPERTY_TABLE_NAME, tableName);
-			tableAliasToProperties.put(mapName, props);
+			putProperties(mapName, props);
 		}
 		
 		FactoryAccumuloSortedMap out = new FactoryAccumuloSortedMap(conn,tableName,true);
@@ -148,22 +252,25 @@ public class AccumuloSortedMapFactory {
 	public void addDefaultProperty(String key,String value){
 		addMapSpecificProperty(DEFAULT_SETTING_METATABLENAME,key,value);
 	}
+	/**
+	 * property writes start from the metadata table, not the cache, so other clients' recent changes aren't overwritten
+	 */
 	public void removeMapSpecificProperty(String tableName,String key){
-		Properties p = getProperties(tableName);
-		if(p != null){
-			p.remove(key);
+		Properties p = readProperties(tableName);
+		if(p != null && p.remove(key) != null){
+			putProperties(tableName, p);
 		}
 	}
 	public void removeDefaultProperty(String key){
 		removeMapSpecificProperty(DEFAULT_SETTING_METATABLENAME,key);
 	}
 	public void addMapSpecificProperty(String tableName,String key,String value){
-		Properties p = getProperties(tableName);
+		Properties p = readProperties(tableName);
 		if(p == null){
 			p = new Properties();
 		}
 		p.setProperty(key, value);		
-		tableAliasToProperties.put(tableName, p);
+		putProperties(tableName, p);
 	}
 	public String getMapSpecificProperty(String tableName,String key){
 		Properties p = getProperties(tableName);
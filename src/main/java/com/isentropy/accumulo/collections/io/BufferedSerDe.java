@@ -0,0 +1,42 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a SerDe that can serialize into a caller-supplied buffer and deserialize from a slice of an array, 
+ * so the map's read and write paths don't allocate a byte[] per key.
+ */
+public interface BufferedSerDe extends SerDe {
+	/**
+	 * writes the serialized form of o at the buffer's position, and advances the position.
+	 * @return the number of bytes written, or -1 if o doesn't fit in the remaining buffer, 
+	 * in which case the position is unchanged
+	 */
+	public int serialize(Object o, ByteBuffer buf);
+	/**
+	 * deserializes len bytes of b starting at offset. does not modify b.
+	 */
+	public Object deserialize(byte[] b, int offset, int len);
+}
@@ -0,0 +1,81 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * serializes doubles as 8 big-endian bytes that sort in numeric order: the IEEE 754 bits with the sign bit flipped 
+ * for positive numbers, and all bits flipped for negative numbers. unlike FixedPointSerde, this is lossless.
+ * -0.0 sorts before 0.0, and NaN sorts after positive infinity.
+ * 
+ * other Numbers are converted with doubleValue(), and other objects are parsed from toString(). 
+ * deserializes to Double.
+ */
+public class DoubleKeySerde implements DoubleSerDe{
+
+	public static long encode(double d){
+		long bits = Double.doubleToLongBits(d);
+		return bits < 0 ? ~bits : bits ^ Long.MIN_VALUE;
+	}
+	public static double decode(long l){
+		return Double.longBitsToDouble(l < 0 ? l ^ Long.MIN_VALUE : ~l);
+	}
+	protected static double toDouble(Object o){
+		return o instanceof Number ? ((Number) o).doubleValue() : Double.parseDouble(o.toString());
+	}
+
+	@Override
+	public byte[] serializeDouble(double d) {
+		byte[] b = new byte[Long.BYTES];
+		LongKeySerde.writeLong(encode(d), b, 0);
+		return b;
+	}
+	@Override
+	public int serializeDouble(double d, ByteBuffer buf) {
+		if(buf.remaining() < Long.BYTES)
+			return -1;
+		buf.putLong(encode(d));
+		return Long.BYTES;
+	}
+	@Override
+	public double deserializeDouble(byte[] b, int offset, int len) {
+		return decode(LongKeySerde.readLong(b, offset));
+	}
+	@Override
+	public byte[] serialize(Object o) {
+		return serializeDouble(toDouble(o));
+	}
+	@Override
+	public int serialize(Object o, ByteBuffer buf) {
+		return serializeDouble(toDouble(o), buf);
+	}
+	@Override
+	public Object deserialize(byte[] b) {
+		return deserializeDouble(b, 0, b.length);
+	}
+	@Override
+	public Object deserialize(byte[] b, int offset, int len) {
+		return deserializeDouble(b, offset, len);
+	}
+}
@@ -0,0 +1,39 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * a BufferedSerDe for floating point types that can serialize and deserialize primitive doubles without boxing. 
+ * see AccumuloSortedMap.putDouble() and getDouble()
+ */
+public interface DoubleSerDe extends BufferedSerDe {
+	public byte[] serializeDouble(double d);
+	/**
+	 * writes d at the buffer's position
+	 * @return the number of bytes written, or -1 if d doesn't fit in the remaining buffer
+	 */
+	public int serializeDouble(double d, ByteBuffer buf);
+	public double deserializeDouble(byte[] b, int offset, int len);
+}
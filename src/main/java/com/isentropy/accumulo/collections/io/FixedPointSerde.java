@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
@@ -67,8 +68,10 @@ import static com.isentropy.accumulo.collections.io.JavaSerializationSerde.javaS
  *  
  *  's': UTF8 string bytes 
  * 
+ * Maps whose keys or values are all of one numeric type can use LongKeySerde, IntKeySerde, DoubleKeySerde 
+ * or FloatKeySerde instead, which are smaller and, for doubles, lossless.
  */
-public class FixedPointSerde implements SerDe{
+public class FixedPointSerde implements BufferedSerDe{
 	public static Logger log = LoggerFactory.getLogger(FixedPointSerde.class);
 
 	public static final byte TYPEBYTE_BYTEARRAY='a';
@@ -81,10 +84,15 @@ public class FixedPointSerde implements SerDe{
 	protected byte[] writeNumberAsFixedPoint(Number n){
 		boolean writeFraction = n instanceof Float || n instanceof Double;
 		ByteBuffer bb = ByteBuffer.allocate(2+Long.BYTES + (writeFraction?Long.BYTES:0));
-		double d = n.doubleValue();
-		long l = writeFraction?(long) Math.floor(d):n.longValue();
 		bb.put(VERSION0);
 		bb.put(TYPEBYTE_FIXEDPOINT);
+		putFixedPoint(n,bb);
+		return bb.array();
+	}
+	protected static void putFixedPoint(Number n, ByteBuffer bb){
+		boolean writeFraction = n instanceof Float || n instanceof Double;
+		double d = n.doubleValue();
+		long l = writeFraction?(long) Math.floor(d):n.longValue();
 		if(l >= 0){
 			bb.putLong(l|LONG_BIT64);
 		}
@@ -97,8 +105,46 @@ public class FixedPointSerde implements SerDe{
 			long fraction_representation = Math.round(Long.MAX_VALUE*(frac));
 			bb.putLong(fraction_representation);
 		}
-		bb.flip();
-		return bb.array();
+	}
+	/**
+	 * writes the same bytes as s.getBytes(StandardCharsets.UTF_8), without allocating an array.
+	 * unpaired surrogates are written as '?', as String.getBytes() does.
+	 */
+	protected static void putUtf8(String s, ByteBuffer bb){
+		int len = s.length();
+		for(int i=0;i<len;i++){
+			char c = s.charAt(i);
+			if(c < 0x80){
+				bb.put((byte) c);
+			}
+			else if(c < 0x800){
+				bb.put((byte) (0xc0 | (c >> 6)));
+				bb.put((byte) (0x80 | (c & 0x3f)));
+			}
+			else if(Character.isSurrogate(c)){
+				if(Character.isHighSurrogate(c) && i+1 < len && Character.isLowSurrogate(s.charAt(i+1))){
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					bb.put((byte) (0xf0 | (cp >> 18)));
+					bb.put((byte) (0x80 | ((cp >> 12) & 0x3f)));
+					bb.put((byte) (0x80 | ((cp >> 6) & 0x3f)));
+					bb.put((byte) (0x80 | (cp & 0x3f)));
+				}
+				else{
+					bb.put((byte) '?');
+				}
+			}
+			else{
+				bb.put((byte) (0xe0 | (c >> 12)));
+				bb.put((byte) (0x80 | ((c >> 6) & 0x3f)));
+				bb.put((byte) (0x80 | (c & 0x3f)));
+			}
+		}
+	}
+	protected static boolean isFixedPoint(Object o){
+		if(!(o instanceof Number))
+			return false;
+		double d = ((Number) o).doubleValue();
+		return d >= Long.MIN_VALUE && d <= Long.MAX_VALUE;
 	}
 
 	@Override
@@ -112,11 +158,8 @@ public class FixedPointSerde implements SerDe{
 			bb.flip();
 			return bb.array();
 		}
-		if(o instanceof Number){
-			Number n = (Number) o;
-			double d = n.doubleValue();
-			if(d >= Long.MIN_VALUE && d <= Long.MAX_VALUE)
-				return writeNumberAsFixedPoint(n);
+		if(isFixedPoint(o)){
+			return writeNumberAsFixedPoint((Number) o);
 		}
 		if(o instanceof byte[]){
 			byte[] ob = (byte[]) o;
@@ -137,14 +180,45 @@ public class FixedPointSerde implements SerDe{
 		return bb.array();
 	}
 	@Override
+	public int serialize(Object o, ByteBuffer bb){
+		int start = bb.position();
+		try{
+			bb.put(VERSION0);
+			if(o instanceof String){
+				bb.put(TYPEBYTE_UTF8);
+				putUtf8((String) o,bb);
+			}
+			else if(isFixedPoint(o)){
+				bb.put(TYPEBYTE_FIXEDPOINT);
+				putFixedPoint((Number) o,bb);
+			}
+			else if(o instanceof byte[]){
+				bb.put(TYPEBYTE_BYTEARRAY);
+				bb.put((byte[]) o);
+			}
+			else{
+				bb.put(TYPEBYTE_OBJECT);
+				bb.put(javaSerialize(o));
+			}
+		}
+		catch(BufferOverflowException e){
+			bb.position(start);
+			return -1;
+		}
+		return bb.position() - start;
+	}
+	@Override
 	public Object deserialize(byte[] b){
-		ByteBuffer bb = ByteBuffer.wrap(b);
-		byte version = bb.get();
-		byte type = bb.get();
+		return deserialize(b,0,b.length);
+	}
+	@Override
+	public Object deserialize(byte[] b, int offset, int len){
+		byte version = b[offset];
+		byte type = b[offset+1];
 		switch(type){
-		case TYPEBYTE_BYTEARRAY: return Arrays.copyOfRange(b, 2, b.length);
+		case TYPEBYTE_BYTEARRAY: return Arrays.copyOfRange(b, offset+2, offset+len);
 		case TYPEBYTE_FIXEDPOINT: 
-			long intpart = bb.getLong();
+			long intpart = readLong(b,offset+2);
 			if((intpart&LONG_BIT64) != 0){
 				//positive
 				intpart=intpart^LONG_BIT64;
@@ -153,22 +227,29 @@ public class FixedPointSerde implements SerDe{
 				//negative
 				 intpart = intpart + Long.MIN_VALUE;
 			}
-			if(!bb.hasRemaining()){
+			if(len < 2+2*Long.BYTES){
 				return intpart;
 			}
 
-			double fracpart = bb.getLong();
+			double fracpart = readLong(b,offset+2+Long.BYTES);
 			fracpart = fracpart/Long.MAX_VALUE;
 			return intpart+fracpart;
 
 		case TYPEBYTE_OBJECT:
-			return javaDeserialize(b,2,b.length-2);
+			return javaDeserialize(b,offset+2,len-2);
 		case TYPEBYTE_UTF8:
-			return new String(b,2,b.length-2,StandardCharsets.UTF_8);
+			return new String(b,offset+2,len-2,StandardCharsets.UTF_8);
 		default: break;
 		}
 		return null;
 	}
+	protected static long readLong(byte[] b, int offset){
+		long l = 0;
+		for(int i=0;i<Long.BYTES;i++){
+			l = (l << 8) | (b[offset+i] & 0xff);
+		}
+		return l;
+	}
 	/*
 	public static void main(String[] args) throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
 		Connector c = new MockInstance().getConnector("root", new PasswordToken());
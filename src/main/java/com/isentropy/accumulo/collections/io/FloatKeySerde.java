@@ -0,0 +1,76 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * serializes floats as 4 big-endian bytes that sort in numeric order, like DoubleKeySerde. 
+ * 
+ * other Numbers are converted with floatValue(), and other objects are parsed from toString(). 
+ * deserializes to Float.
+ */
+public class FloatKeySerde implements DoubleSerDe{
+
+	public static int encode(float f){
+		int bits = Float.floatToIntBits(f);
+		return bits < 0 ? ~bits : bits ^ Integer.MIN_VALUE;
+	}
+	public static float decode(int i){
+		return Float.intBitsToFloat(i < 0 ? i ^ Integer.MIN_VALUE : ~i);
+	}
+
+	@Override
+	public byte[] serializeDouble(double d) {
+		int i = encode((float) d);
+		return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+	}
+	@Override
+	public int serializeDouble(double d, ByteBuffer buf) {
+		if(buf.remaining() < Integer.BYTES)
+			return -1;
+		buf.putInt(encode((float) d));
+		return Integer.BYTES;
+	}
+	@Override
+	public double deserializeDouble(byte[] b, int offset, int len) {
+		int i = ((b[offset] & 0xff) << 24) | ((b[offset+1] & 0xff) << 16) | ((b[offset+2] & 0xff) << 8) | (b[offset+3] & 0xff);
+		return decode(i);
+	}
+	@Override
+	public byte[] serialize(Object o) {
+		return serializeDouble(DoubleKeySerde.toDouble(o));
+	}
+	@Override
+	public int serialize(Object o, ByteBuffer buf) {
+		return serializeDouble(DoubleKeySerde.toDouble(o), buf);
+	}
+	@Override
+	public Object deserialize(byte[] b) {
+		return (float) deserializeDouble(b, 0, b.length);
+	}
+	@Override
+	public Object deserialize(byte[] b, int offset, int len) {
+		return (float) deserializeDouble(b, offset, len);
+	}
+}
@@ -0,0 +1,75 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * serializes ints as 4 big-endian bytes with the sign bit flipped, so that byte order matches numeric order.
+ * 
+ * other Numbers are converted with longValue(), and other objects are parsed from toString(). 
+ * values outside the int range throw IllegalArgumentException. deserializes to Integer.
+ */
+public class IntKeySerde implements LongSerDe{
+
+	protected static int toInt(long l){
+		if(l < Integer.MIN_VALUE || l > Integer.MAX_VALUE)
+			throw new IllegalArgumentException(l+" is outside the range of IntKeySerde");
+		return (int) l;
+	}
+
+	@Override
+	public byte[] serializeLong(long l) {
+		int i = toInt(l) ^ Integer.MIN_VALUE;
+		return new byte[]{(byte) (i >>> 24), (byte) (i >>> 16), (byte) (i >>> 8), (byte) i};
+	}
+	@Override
+	public int serializeLong(long l, ByteBuffer buf) {
+		int i = toInt(l);
+		if(buf.remaining() < Integer.BYTES)
+			return -1;
+		buf.putInt(i ^ Integer.MIN_VALUE);
+		return Integer.BYTES;
+	}
+	@Override
+	public long deserializeLong(byte[] b, int offset, int len) {
+		int i = ((b[offset] & 0xff) << 24) | ((b[offset+1] & 0xff) << 16) | ((b[offset+2] & 0xff) << 8) | (b[offset+3] & 0xff);
+		return i ^ Integer.MIN_VALUE;
+	}
+	@Override
+	public byte[] serialize(Object o) {
+		return serializeLong(LongKeySerde.toLong(o));
+	}
+	@Override
+	public int serialize(Object o, ByteBuffer buf) {
+		return serializeLong(LongKeySerde.toLong(o), buf);
+	}
+	@Override
+	public Object deserialize(byte[] b) {
+		return (int) deserializeLong(b, 0, b.length);
+	}
+	@Override
+	public Object deserialize(byte[] b, int offset, int len) {
+		return (int) deserializeLong(b, offset, len);
+	}
+}
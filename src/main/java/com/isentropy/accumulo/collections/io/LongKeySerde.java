@@ -0,0 +1,86 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.collections.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * serializes longs as 8 big-endian bytes with the sign bit flipped, so that byte order matches numeric order.
+ * unlike FixedPointSerde, there is no version or type byte. 
+ * 
+ * other Numbers are converted with longValue(), and other objects are parsed from toString(). 
+ * deserializes to Long.
+ */
+public class LongKeySerde implements LongSerDe{
+
+	public static void writeLong(long l, byte[] b, int offset){
+		for(int i=Long.BYTES-1;i>=0;i--){
+			b[offset+i] = (byte) l;
+			l >>>= 8;
+		}
+	}
+	public static long readLong(byte[] b, int offset){
+		long l = 0;
+		for(int i=0;i<Long.BYTES;i++){
+			l = (l << 8) | (b[offset+i] & 0xff);
+		}
+		return l;
+	}
+	protected static long toLong(Object o){
+		return o instanceof Number ? ((Number) o).longValue() : Long.parseLong(o.toString());
+	}
+
+	@Override
+	public byte[] serializeLong(long l) {
+		byte[] b = new byte[Long.BYTES];
+		writeLong(l ^ Long.MIN_VALUE, b, 0);
+		return b;
+	}
+	@Override
+	public int serializeLong(long l, ByteBuffer buf) {
+		if(buf.remaining() < Long.BYTES)
+			return -1;
+		buf.putLong(l ^ Long.MIN_VALUE);
+		return Long.BYTES;
+	}
+	@Override
+	public long deserializeLong(byte[] b, int offset, int len) {
+		return readLong(b, offset) ^ Long.MIN_VALUE;
+	}
+	@Override
+	public byte[] serialize(Object o) {
+		return serializeLong(toLong(o));
+	}
+	@Override
+	public int serialize(Object o, ByteBuffer buf) {
+		return serializeLong(toLong(o), buf);
+	}
+	@Override
+	public Object deserialize(byte[] b) {
+		return deserializeLong(b, 0, b.length);
+	}
+	@Override
+	public Object deserialize(byte[] b, int offset, int len) {
+		return deserializeLong(b, offset, len);
+	}
+}
@@ -29,6 +29,8 @@ import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.user.TransformingIterator.KVBuffer;
 
+import com.isentropy.accumulo.util.Util;
+
 public abstract class DeserializedEntryTransformingIterator extends DeserializedTransformingIterator{
 
 	/**
@@ -39,17 +41,29 @@ public abstract class DeserializedEntryTransformingIterator extends Deserialized
 	 * @throws IOException
 	 */
 	protected abstract Object transformValue(Object key,Object value) throws IOException;
+
+	/**
+	 * override to return false if transformValue() never looks at the key. it is then passed null.
+	 */
+	protected boolean needsKey(){
+		return true;
+	}
+	/**
+	 * override to return false if transformValue() never looks at the value. it is then passed null.
+	 */
+	protected boolean needsValue(){
+		return true;
+	}
 	
 
 	@Override
 	protected final void transformRange(SortedKeyValueIterator<Key, Value> input,
 			KVBuffer output) throws IOException {
+		boolean needsKey = needsKey(), needsValue = needsValue();
 		while(input.hasTop()){
 			Key k = input.getTopKey();
-			byte[] kd = k.getRowData().toArray();
-			Value v = input.getTopValue();
-			Object vo = value_input_serde.deserialize(v.get());
-			Object ko = key_serde.deserialize(kd);
+			Object vo = needsValue ? value_input_serde.deserialize(input.getTopValue().get()) : null;
+			Object ko = needsKey ? Util.deserialize(key_serde,k.getRowData()) : null;
 			output.append(k, new Value(value_output_serde.serialize(transformValue(ko,vo))));
 			input.next();
 		}
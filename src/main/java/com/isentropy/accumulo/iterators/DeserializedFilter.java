@@ -37,6 +37,7 @@ import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_KEY_SERDE
 import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_VALUE_INPUT_SERDE;
 
 import com.isentropy.accumulo.collections.io.SerDe;
+import com.isentropy.accumulo.util.LazyDeserialized;
 /**
  * This class filters deserialized entries
  *
@@ -48,8 +49,32 @@ public abstract class DeserializedFilter extends Filter{
 	protected SerDe key_serde = null;
 	protected SerDe value_serde = null;
 
+	private LazyDeserialized lazyKey, lazyValue;
+
 	protected abstract boolean allow(Object key, Object value);
 
+	/**
+	 * override to return false if allow() never looks at the key. it is then passed null.
+	 */
+	protected boolean needsKey(){
+		return true;
+	}
+	/**
+	 * override to return false if allow() never looks at the value. it is then passed null.
+	 */
+	protected boolean needsValue(){
+		return true;
+	}
+
+	/**
+	 * key and value are deserialized only when get() is called on them. the default calls allow() with 
+	 * the objects that needsKey() and needsValue() ask for. override to skip deserializing 
+	 * the value (or key) of entries that are decided by the other.
+	 */
+	protected boolean allowLazily(LazyDeserialized key, LazyDeserialized value){
+		return allow(needsKey() ? key.get() : null, needsValue() ? value.get() : null);
+	}
+
 	
 	SecureClassLoader cl = new SecureClassLoader(){
 		public Class deserialize(byte[] classBytes){
@@ -104,11 +129,13 @@ public abstract class DeserializedFilter extends Filter{
 		catch(Exception e){
 			throw new IOException(e);
 		}
+		lazyKey = new LazyDeserialized(key_serde);
+		lazyValue = new LazyDeserialized(value_serde);
 	}
 
 	@Override
 	public final boolean accept(Key k, Value v) {
-		return allow(key_serde.deserialize(k.getRowData().toArray()), value_serde.deserialize(v.get()));
+		return allowLazily(lazyKey.reset(k.getRowData()), lazyValue.reset(v.get()));
 	}
 
 }
@@ -0,0 +1,41 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.isentropy.accumulo.iterators;
+
+/**
+ * a DeserializedFilter that only looks at keys. values are never deserialized, 
+ * and no value serde is needed.
+ */
+public abstract class DeserializedKeyFilter extends DeserializedFilter{
+
+	protected abstract boolean allowKey(Object key);
+
+	@Override
+	protected final boolean needsValue(){
+		return false;
+	}
+
+	@Override
+	protected final boolean allow(Object key, Object value) {
+		return allowKey(key);
+	}
+}
@@ -0,0 +1,98 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
+
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.util.HyperLogLog;
+import com.isentropy.accumulo.util.KeyValue;
+
+/**
+ * builds a HyperLogLog sketch of the distinct values (or keys) seen on a tablet. 
+ * items are hashed in their serialized form, so no SerDe is needed, and values are distinct if their bytes are distinct.
+ * 
+ * output value is JavaSerialized HyperLogLog object
+ */
+public class DistinctCountAggregateIterator extends AggregateIterator{
+	public static final String OPT_PRECISION = "precision";
+	public static final String OPT_COUNT_KEYS = "countkeys";
+
+	protected HyperLogLog sketch;
+	protected boolean countKeys = false;
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(OPT_PRECISION, "HyperLogLog precision, between "+HyperLogLog.MIN_PRECISION+" and "+HyperLogLog.MAX_PRECISION+" (optional)");
+		opts.addNamedOption(OPT_COUNT_KEYS, "if true, count distinct keys instead of values (optional)");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		String p = options.get(OPT_PRECISION);
+		if(p != null){
+			int precision = Integer.parseInt(p);
+			return precision >= HyperLogLog.MIN_PRECISION && precision <= HyperLogLog.MAX_PRECISION;
+		}
+		return true;
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		String p = options.get(OPT_PRECISION);
+		sketch = p == null ? new HyperLogLog() : new HyperLogLog(Integer.parseInt(p));
+		countKeys = Boolean.parseBoolean(options.get(OPT_COUNT_KEYS));
+	}
+
+	@Override
+	protected KeyValue aggregate() throws IOException{
+		Key k=null;
+		while(getSource().hasTop()){
+			k= getSource().getTopKey();
+			if(countKeys){
+				ByteSequence row = k.getRowData();
+				sketch.offer(row.getBackingArray(), row.offset(), row.length());
+			}
+			else{
+				byte[] v = getSource().getTopValue().get();
+				sketch.offer(v, 0, v.length);
+			}
+			getSource().next();
+		}
+		//return the java serialized sketch in one Value
+		return new KeyValue(k,new Value(JavaSerializationSerde.javaSerialize(sketch)));
+	}
+}
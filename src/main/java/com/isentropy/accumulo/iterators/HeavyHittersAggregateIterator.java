@@ -0,0 +1,85 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
+
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.util.KeyValue;
+import com.isentropy.accumulo.util.SpaceSaving;
+
+import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_VALUE_INPUT_SERDE;
+
+/**
+ * tracks the most frequent deserialized values on a tablet with a SpaceSaving summary of a fixed number of counters.
+ * 
+ * output value is JavaSerialized SpaceSaving object
+ */
+public class HeavyHittersAggregateIterator extends AggregateIterator{
+	public static final String OPT_CAPACITY = "capacity";
+
+	protected SpaceSaving summary;
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(OPT_CAPACITY, "number of SpaceSaving counters (optional)");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		String c = options.get(OPT_CAPACITY);
+		if(c != null && Integer.parseInt(c) < 1)
+			return false;
+		return options.containsKey(OPT_VALUE_INPUT_SERDE);
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		String c = options.get(OPT_CAPACITY);
+		summary = c == null ? new SpaceSaving() : new SpaceSaving(Integer.parseInt(c));
+	}
+
+	@Override
+	protected KeyValue aggregate() throws IOException{
+		Key k=null;
+		while(getSource().hasTop()){
+			k= getSource().getTopKey();
+			summary.offer(value_serde.deserialize(getSource().getTopValue().get()));
+			getSource().next();
+		}
+		//return the java serialized summary in one Value
+		return new KeyValue(k,new Value(JavaSerializationSerde.javaSerialize(summary)));
+	}
+}
@@ -31,6 +31,10 @@ import java.io.IOException;
 public class KeyToKeyMapTransformer extends
 		DeserializedEntryTransformingIterator {
 	@Override
+	protected boolean needsValue(){
+		return false;
+	}
+	@Override
 	protected Object transformValue(Object key, Object value) throws IOException {
 		return key;
 	}
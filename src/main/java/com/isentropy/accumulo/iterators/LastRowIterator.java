@@ -0,0 +1,123 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.accumulo.core.data.ByteSequence;
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Range;
+import org.apache.accumulo.core.iterators.WrappingIterator;
+import org.apache.hadoop.io.Text;
+
+/**
+ * returns only the entries of the last row in the seek range. 
+ * the last row is found byte by byte with a binary search of seeks, so a tablet is never scanned: 
+ * it takes at most about 9 seeks per byte of the last row.
+ */
+public class LastRowIterator extends WrappingIterator{
+	private static final byte[] EMPTY = new byte[0];
+
+	private Range range;
+	private Collection<ByteSequence> columnFamilies;
+	private boolean inclusive;
+	private boolean found = false;
+
+	@Override
+	public void seek(Range range, Collection<ByteSequence> columnFamilies, boolean inclusive) throws IOException {
+		this.range = range;
+		this.columnFamilies = columnFamilies;
+		this.inclusive = inclusive;
+		byte[] last = lastRow();
+		found = last != null;
+		if(found){
+			Text row = new Text(last);
+			super.seek(range.clip(new Range(row, true, row, true)), columnFamilies, inclusive);
+		}
+	}
+
+	@Override
+	public boolean hasTop(){
+		return found && super.hasTop();
+	}
+
+	/**
+	 * @return the first row >= prefix in range, or null if there is none
+	 */
+	private ByteSequence firstRowFrom(byte[] prefix) throws IOException{
+		Range r = range.clip(new Range(new Text(prefix), true, null, false), true);
+		if(r == null)
+			return null;
+		getSource().seek(r, columnFamilies, inclusive);
+		if(!getSource().hasTop())
+			return null;
+		return getSource().getTopKey().getRowData();
+	}
+
+	/**
+	 * the last row R is the largest row with R >= p for every probe p that has a row >= p in range. 
+	 * each step extends a known prefix of R by the largest next byte that still has a row at or after it.
+	 */
+	private byte[] lastRow() throws IOException{
+		if(firstRowFrom(EMPTY) == null)
+			return null;
+		byte[] prefix = EMPTY;
+		while(true){
+			byte[] probe = Arrays.copyOf(prefix, prefix.length+1);
+			ByteSequence next = firstRowFrom(probe);
+			// no row is longer than prefix, so prefix is the last row
+			if(next == null)
+				return prefix;
+			// the first row at or after probe bounds the next byte from below
+			int lo = next.length() > prefix.length && startsWith(next, prefix) ? next.byteAt(prefix.length) & 0xff : 0;
+			int hi = 255;
+			while(lo < hi){
+				int mid = (lo+hi+1)/2;
+				probe[prefix.length] = (byte) mid;
+				next = firstRowFrom(probe);
+				if(next == null){
+					hi = mid-1;
+				}
+				else{
+					lo = mid;
+					if(next.length() > prefix.length && startsWith(next, prefix))
+						lo = Math.max(lo, next.byteAt(prefix.length) & 0xff);
+				}
+			}
+			probe[prefix.length] = (byte) lo;
+			prefix = probe;
+		}
+	}
+
+	private static boolean startsWith(ByteSequence b, byte[] prefix){
+		if(b.length() < prefix.length)
+			return false;
+		for(int i=0;i<prefix.length;i++){
+			if(b.byteAt(i) != prefix[i])
+				return false;
+		}
+		return true;
+	}
+}
@@ -31,6 +31,7 @@ import org.slf4j.LoggerFactory;
 
 import com.isentropy.accumulo.collections.io.LongBinarySerde;
 import com.isentropy.accumulo.util.KeyValue;
+import com.isentropy.accumulo.util.Util;
 
 /**
  * 
@@ -60,7 +61,7 @@ public class MapChecksumAggregateIterator extends AggregateIterator {
 		while(getSource().hasTop()){
 			k= getSource().getTopKey();
 			Value v = getSource().getTopValue();
-			Object ko = key_serde.deserialize(k.getRowData().toArray());
+			Object ko = Util.deserialize(key_serde,k.getRowData());
 			Object vo = value_serde.deserialize(v.get());
 			keyChecksum += ko.hashCode();
 			valueChecksum += vo.hashCode();
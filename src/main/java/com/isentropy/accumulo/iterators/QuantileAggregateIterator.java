@@ -0,0 +1,94 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
+
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.util.KeyValue;
+import com.isentropy.accumulo.util.QuantileSketch;
+
+import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_VALUE_INPUT_SERDE;
+
+/**
+ * builds a QuantileSketch of all values on a tablet that are instances of Number. 
+ * memory use is bounded by the sketch parameter k, not by the number of entries.
+ * 
+ * output value is JavaSerialized QuantileSketch object
+ */
+public class QuantileAggregateIterator extends AggregateIterator{
+	public static final String OPT_K = "k";
+
+	protected QuantileSketch sketch;
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(OPT_K, "QuantileSketch size parameter, at least "+QuantileSketch.MIN_K+" (optional)");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		String k = options.get(OPT_K);
+		if(k != null && Integer.parseInt(k) < QuantileSketch.MIN_K)
+			return false;
+		return options.containsKey(OPT_VALUE_INPUT_SERDE);
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		sketch = newSketch(options);
+	}
+
+	static QuantileSketch newSketch(Map<String,String> options){
+		String k = options.get(OPT_K);
+		return k == null ? new QuantileSketch() : new QuantileSketch(Integer.parseInt(k));
+	}
+
+	@Override
+	protected KeyValue aggregate() throws IOException{
+		Key k=null;
+		while(getSource().hasTop()){
+			k= getSource().getTopKey();
+			Value v = getSource().getTopValue();
+			Object vo = value_serde.deserialize(v.get());
+			if(vo instanceof Number){
+				sketch.offer(((Number) vo).doubleValue());
+			}
+			getSource().next();
+		}
+		//return the java serialized sketch in one Value
+		return new KeyValue(k,new Value(JavaSerializationSerde.javaSerialize(sketch)));
+	}
+}
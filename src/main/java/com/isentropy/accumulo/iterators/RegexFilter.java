@@ -32,6 +32,8 @@ import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 
+import com.isentropy.accumulo.util.LazyDeserialized;
+
 public class RegexFilter extends DeserializedFilter{
 	public static final String OPT_KEYREGEX="keyregex";
 	public static final String OPT_VALUEREGEX="valueregex";
@@ -48,6 +50,12 @@ public class RegexFilter extends DeserializedFilter{
 		
 	}
 	@Override
+	protected boolean allowLazily(LazyDeserialized key, LazyDeserialized value) {
+		// a key-only filter never deserializes values, and rejected keys skip the value
+		return (keyRegex == null || keyRegex.matcher(key.get().toString()).find()) &&
+				(valueRegex == null || valueRegex.matcher(value.get().toString()).find());
+	}
+	@Override
 	protected boolean allow(Object key, Object value) {
 		return (keyRegex == null || keyRegex.matcher(key.toString()).find()) &&
 				(valueRegex == null || valueRegex.matcher(value.toString()).find());
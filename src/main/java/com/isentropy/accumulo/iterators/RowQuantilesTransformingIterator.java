@@ -0,0 +1,86 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
+
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.util.QuantileSketch;
+
+/**
+ * transforms each row's values into a JavaSerialized QuantileSketch of those that are instances of Number. 
+ * the per row analog of QuantileAggregateIterator.
+ */
+public class RowQuantilesTransformingIterator extends DeserializedTransformingIterator{
+	protected Map<String,String> sketchOptions;
+
+	public RowQuantilesTransformingIterator(){
+		value_output_serde = new JavaSerializationSerde();
+	}
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(QuantileAggregateIterator.OPT_K, "QuantileSketch size parameter, at least "+QuantileSketch.MIN_K+" (optional)");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		String k = options.get(QuantileAggregateIterator.OPT_K);
+		return k == null || Integer.parseInt(k) >= QuantileSketch.MIN_K;
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		sketchOptions = options;
+	}
+
+	@Override
+	protected void transformRange(SortedKeyValueIterator<Key, Value> input,
+			KVBuffer output) throws IOException {
+		QuantileSketch sketch = QuantileAggregateIterator.newSketch(sketchOptions);
+		Key k=null;
+		while(input.hasTop()){
+			k= input.getTopKey();
+			Value v = input.getTopValue();
+			Object vo = value_input_serde.deserialize(v.get());
+			if(vo instanceof Number){
+				sketch.offer(((Number) vo).doubleValue());
+			}
+			input.next();
+		}
+		output.append(k, new Value(value_output_serde.serialize(sketch)));
+	}
+
+}
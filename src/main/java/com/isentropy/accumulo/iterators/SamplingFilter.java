@@ -24,43 +24,67 @@ package com.isentropy.accumulo.iterators;
 
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.security.DigestException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
 import java.util.Map;
 import java.util.Random;
 
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.apache.accumulo.core.iterators.Filter;
 import org.apache.accumulo.core.iterators.IteratorEnvironment;
 import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
 import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
-import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.WritableComparator;
 
 import com.isentropy.accumulo.util.Util;
 
+/**
+ * accepts the entries whose row hash falls in [fromfrac, tofrac) of the hash space. 
+ * the hash is seeded with OPT_RANDOMSEED, so the same seed and fractions select the same rows.
+ * 
+ * OPT_HASH selects the hash. HASH_SHA256 is the default, so existing seeds reproduce the same samples. 
+ * HASH_MURMUR is a much cheaper 64 bit hash, compared against precomputed long thresholds.
+ */
 public class SamplingFilter extends Filter{
 	public static final String OPT_FROMFRACTION = "fromfrac";
 	public static final String OPT_TOFRACTION = "tofrac";
 	public static final String OPT_RANDOMSEED = "seed";
 	public static final String OPT_MAXTIMESTAMP = "maxts";
 	public static final String OPT_MINTIMESTAMP = "mints";
+	public static final String OPT_HASH = "hash";
+	
+	public static final String HASH_SHA256 = "sha256";
+	public static final String HASH_MURMUR = "murmur64";
 	
-	private byte[] fromHash,toHash,randSeed;
+	private byte[] fromHash,toHash,randSeed,rowHash;
 	private double fromfrac=0,tofrac=1;
 	private String mdtype = "SHA-256";
 	private long maxts = -1;
 	private long mints = -1;
+	private boolean murmur = false;
+	private long murmurSeed;
+	// unsigned thresholds with the sign bit flipped, so they compare as signed longs
+	private long fromThreshold,toThreshold;
 	
-	BytesWritable.Comparator comp = new BytesWritable.Comparator();
 	MessageDigest md;
 
 	private int compare(byte[] a,byte[] b){
-//		int cmp = comp.compare(a, 0, a.length, b, 0, b.length);
-		int cmp = new BytesWritable(a).compareTo(new BytesWritable(b));
-		//System.out.println(Util.bytesToHex(a).substring(0, 4)+" vs "+Util.bytesToHex(b).substring(0, 4) + " = "+cmp);
-		return cmp;
+		return WritableComparator.compareBytes(a, 0, a.length, b, 0, b.length);
+	}
+	
+	/**
+	 * @return fraction*2^64 as an unsigned long, with the sign bit flipped
+	 */
+	protected static long fractionToThreshold(double fraction){
+		if(fraction <= 0)
+			return Long.MIN_VALUE;
+		if(fraction >= 1)
+			return Long.MAX_VALUE;
+		return ((long) (fraction * 0x1p63) << 1) ^ Long.MIN_VALUE;
 	}
 	
 	@Override
@@ -71,6 +95,7 @@ public class SamplingFilter extends Filter{
 		opts.addNamedOption(OPT_RANDOMSEED, "rand bytes to be added to hashed bytes");
 		opts.addNamedOption(OPT_MAXTIMESTAMP, "maximum timestamp to accept (optional)");
 		opts.addNamedOption(OPT_MINTIMESTAMP, "minimum timestamp to accept (optional)");
+		opts.addNamedOption(OPT_HASH, HASH_SHA256+" (default) or "+HASH_MURMUR+" (optional)");
 		return opts;
 	}
 
@@ -78,18 +103,27 @@ public class SamplingFilter extends Filter{
 	public boolean validateOptions(Map<String,String> options) {
 		if(!super.validateOptions(options))
 			return false;
+		String hash = options.get(OPT_HASH);
+		if(hash != null && !hash.equals(HASH_SHA256) && !hash.equals(HASH_MURMUR))
+			return false;
 		return options.containsKey(OPT_FROMFRACTION) && 
 				options.containsKey(OPT_TOFRACTION) &&
 				options.containsKey(OPT_RANDOMSEED);
 	}
 	
 	protected byte[] hash(byte[] b, byte[] randseed){
+		return hash(b,0,b.length,randseed);
+	}
+	protected byte[] hash(byte[] b, int offset, int len, byte[] randseed){
 		md.reset();
 		md.update(randseed);
-		md.update(b);
-		byte[] h = md.digest();
-		//System.out.println(Util.bytesToHex(h));
-		return h;
+		md.update(b,offset,len);
+		try {
+			md.digest(rowHash, 0, rowHash.length);
+		} catch (DigestException e) {
+			throw new RuntimeException(e);
+		}
+		return rowHash;
 	}
 	
 	@Override
@@ -101,9 +135,13 @@ public class SamplingFilter extends Filter{
 		//pass through without computing hash if sampling all (just time filter)
 		if(fromfrac == 0 && tofrac >= 1)
 			return true;
-			
-		byte[] kb = k.getRowData().toArray();
-		byte[] kbhash = hash(kb,randSeed);
+		
+		ByteSequence row = k.getRowData();
+		if(murmur){
+			long h = Util.murmurHash64(row.getBackingArray(), row.offset(), row.length(), murmurSeed) ^ Long.MIN_VALUE;
+			return h >= fromThreshold && (h < toThreshold || tofrac >= 1);
+		}
+		byte[] kbhash = hash(row.getBackingArray(), row.offset(), row.length(), randSeed);
 		int cmpto = compare(kbhash,toHash), cmpfrom = compare(kbhash,fromHash);
 		return cmpfrom >=0 && (cmpto < 0 || (tofrac >= 1 && cmpto ==0 ));
 	}
@@ -111,16 +149,25 @@ public class SamplingFilter extends Filter{
 	@Override
 	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
 		super.init(source,options,env);
-		try {
-			md = MessageDigest.getInstance(mdtype);
-		} catch (NoSuchAlgorithmException e) {
-			throw new IOException(e);
-		}
 		fromfrac = Double.parseDouble(options.get(OPT_FROMFRACTION));
 		tofrac = Double.parseDouble(options.get(OPT_TOFRACTION));
-		fromHash = Util.hashPoint(md.getDigestLength(), fromfrac);
-		toHash = Util.hashPoint(md.getDigestLength(), tofrac);
 		randSeed =  options.get(OPT_RANDOMSEED).getBytes(StandardCharsets.UTF_8);
+		murmur = HASH_MURMUR.equals(options.get(OPT_HASH));
+		if(murmur){
+			murmurSeed = Util.murmurHash64(randSeed, 0);
+			fromThreshold = fractionToThreshold(fromfrac);
+			toThreshold = fractionToThreshold(tofrac);
+		}
+		else{
+			try {
+				md = MessageDigest.getInstance(mdtype);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IOException(e);
+			}
+			fromHash = Util.hashPoint(md.getDigestLength(), fromfrac);
+			toHash = Util.hashPoint(md.getDigestLength(), tofrac);
+			rowHash = new byte[md.getDigestLength()];
+		}
 
 		String tso = options.get(OPT_MAXTIMESTAMP);
 		if(tso != null){
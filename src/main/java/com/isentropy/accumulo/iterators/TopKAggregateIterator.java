@@ -0,0 +1,143 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+import org.apache.accumulo.core.iterators.OptionDescriber.IteratorOptions;
+
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.util.KeyValue;
+import com.isentropy.accumulo.util.Util;
+
+import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_KEY_SERDE;
+import static com.isentropy.accumulo.collections.AccumuloSortedMap.OPT_VALUE_INPUT_SERDE;
+
+/**
+ * finds the k entries with the largest values on a tablet, using a heap of at most k entries. 
+ * by default values are compared as Numbers and other values are skipped. 
+ * if OPT_COMPARATOR names a Comparator class, all deserialized values are compared with it. 
+ * 
+ * output value is a JavaSerialized ArrayList of (key,value) Map.Entrys, largest value first
+ */
+public class TopKAggregateIterator extends AggregateIterator{
+	public static final String OPT_K = "k";
+	public static final String OPT_COMPARATOR = "comparator";
+
+	/**
+	 * compares Numbers by their double values
+	 */
+	public static class NumberComparator implements Comparator<Object>, Serializable{
+		private static final long serialVersionUID = 1L;
+		@Override
+		public int compare(Object a, Object b) {
+			return Double.compare(((Number) a).doubleValue(), ((Number) b).doubleValue());
+		}
+	}
+
+	protected int maxEntries;
+	protected Comparator valueComparator;
+	protected boolean numbersOnly;
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(OPT_K, "number of entries to keep");
+		opts.addNamedOption(OPT_COMPARATOR, "class name of a Comparator for deserialized values (optional)");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		String c = options.get(OPT_COMPARATOR);
+		if(c != null){
+			try{
+				Comparator cmp = (Comparator) Class.forName(c).newInstance();
+			}
+			catch(Exception e){
+				log.error("Error instantiating Comparator "+c+": "+e.getMessage());
+				return false;
+			}
+		}
+		return options.containsKey(OPT_K) && Integer.parseInt(options.get(OPT_K)) > 0
+				&& options.containsKey(OPT_KEY_SERDE) && options.containsKey(OPT_VALUE_INPUT_SERDE);
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		maxEntries = Integer.parseInt(options.get(OPT_K));
+		String c = options.get(OPT_COMPARATOR);
+		numbersOnly = c == null;
+		try{
+			valueComparator = numbersOnly ? new NumberComparator() : (Comparator) Class.forName(c).newInstance();
+		}
+		catch(Exception e){
+			throw new IOException(e);
+		}
+	}
+
+	@Override
+	protected KeyValue aggregate() throws IOException{
+		final Comparator vc = valueComparator;
+		// min heap, so the head is the entry to evict
+		PriorityQueue<Map.Entry<Object,Object>> heap = new PriorityQueue<Map.Entry<Object,Object>>(maxEntries+1, new Comparator<Map.Entry<Object,Object>>(){
+			@Override
+			public int compare(Map.Entry<Object,Object> a, Map.Entry<Object,Object> b) {
+				return vc.compare(a.getValue(), b.getValue());
+			}
+		});
+		Key k=null;
+		while(getSource().hasTop()){
+			k= getSource().getTopKey();
+			Object vo = value_serde.deserialize(getSource().getTopValue().get());
+			if(!numbersOnly || vo instanceof Number){
+				// only deserialize the key of entries that make it into the heap
+				if(heap.size() < maxEntries || vc.compare(vo, heap.peek().getValue()) > 0){
+					heap.add(new AbstractMap.SimpleImmutableEntry<Object,Object>(Util.deserialize(key_serde, k.getRowData()),vo));
+					if(heap.size() > maxEntries)
+						heap.poll();
+				}
+			}
+			getSource().next();
+		}
+		ArrayList<Map.Entry<Object,Object>> top = new ArrayList<Map.Entry<Object,Object>>(heap);
+		Collections.sort(top, Collections.reverseOrder(heap.comparator()));
+		//return the java serialized list in one Value
+		return new KeyValue(k,new Value(JavaSerializationSerde.javaSerialize(top)));
+	}
+}
@@ -0,0 +1,81 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.isentropy.accumulo.iterators;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.accumulo.core.data.Key;
+import org.apache.accumulo.core.data.Value;
+import org.apache.accumulo.core.iterators.Filter;
+import org.apache.accumulo.core.iterators.IteratorEnvironment;
+import org.apache.accumulo.core.iterators.SortedKeyValueIterator;
+
+import com.isentropy.accumulo.util.Util;
+
+/**
+ * accepts only entries whose value bytes equal the hex encoded OPT_VALUE option. 
+ * compares serialized bytes, so nothing is deserialized.
+ */
+public class ValueMatchFilter extends Filter{
+	public static final String OPT_VALUE = "valuehex";
+	private byte[] probe;
+
+	@Override
+	public IteratorOptions describeOptions() {
+		IteratorOptions opts = super.describeOptions();
+		opts.addNamedOption(OPT_VALUE, "hex encoded serialized value to match");
+		return opts;
+	}
+
+	@Override
+	public boolean validateOptions(Map<String,String> options) {
+		if(!super.validateOptions(options))
+			return false;
+		try{
+			Util.hexToBytes(options.get(OPT_VALUE));
+			return true;
+		}
+		catch(RuntimeException e){
+			return false;
+		}
+	}
+
+	@Override
+	public void init(SortedKeyValueIterator<Key,Value> source, Map<String,String> options, IteratorEnvironment env) throws IOException {
+		super.init(source,options,env);
+		probe = Util.hexToBytes(options.get(OPT_VALUE));
+	}
+
+	@Override
+	public SortedKeyValueIterator<Key,Value> deepCopy(IteratorEnvironment env) {
+		ValueMatchFilter copy = (ValueMatchFilter) super.deepCopy(env);
+		copy.probe = probe;
+		return copy;
+	}
+
+	@Override
+	public boolean accept(Key k, Value v) {
+		return Arrays.equals(v.get(), probe);
+	}
+}
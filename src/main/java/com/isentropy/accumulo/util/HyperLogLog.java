@@ -0,0 +1,110 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.util;
+
+import java.io.Serializable;
+
+/**
+ * HyperLogLog sketch for estimating the number of distinct items in a stream. 
+ * sketches with the same precision can be merged, so per-tablet sketches combine into a sketch of the whole map.
+ * the relative standard error is about 1.04/sqrt(2^precision), and the sketch size is 2^precision bytes.
+ */
+public class HyperLogLog implements Serializable{
+	private static final long serialVersionUID = 1L;
+	public static final int DEFAULT_PRECISION = 12;
+	public static final int MIN_PRECISION = 4;
+	public static final int MAX_PRECISION = 16;
+
+	private final int precision;
+	private final byte[] registers;
+
+	public HyperLogLog(){
+		this(DEFAULT_PRECISION);
+	}
+	public HyperLogLog(int precision){
+		if(precision < MIN_PRECISION || precision > MAX_PRECISION)
+			throw new IllegalArgumentException("precision must be between "+MIN_PRECISION+" and "+MAX_PRECISION);
+		this.precision = precision;
+		registers = new byte[1 << precision];
+	}
+
+	public int getPrecision(){
+		return precision;
+	}
+
+	/**
+	 * @param hash a well mixed 64 bit hash of the item, eg from Util.murmurHash64()
+	 */
+	public void offerHash(long hash){
+		int index = (int) (hash >>> (64 - precision));
+		// the sentinel bit bounds the rank at 64-precision+1
+		long w = (hash << precision) | (1L << (precision - 1));
+		byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+		if(rank > registers[index])
+			registers[index] = rank;
+	}
+	public void offer(byte[] b, int offset, int len){
+		offerHash(Util.murmurHash64(b, offset, len, 0));
+	}
+
+	/**
+	 * adds the items counted by other to this sketch
+	 */
+	public HyperLogLog merge(HyperLogLog other){
+		if(other.precision != precision)
+			throw new IllegalArgumentException("can't merge HyperLogLogs with precisions "+precision+" and "+other.precision);
+		for(int i=0;i<registers.length;i++){
+			if(other.registers[i] > registers[i])
+				registers[i] = other.registers[i];
+		}
+		return this;
+	}
+
+	public long cardinality(){
+		int m = registers.length;
+		double sum = 0;
+		int zeros = 0;
+		for(byte r : registers){
+			sum += 1.0 / (1L << r);
+			if(r == 0)
+				zeros++;
+		}
+		double alpha;
+		switch(m){
+		case 16: alpha = 0.673; break;
+		case 32: alpha = 0.697; break;
+		case 64: alpha = 0.709; break;
+		default: alpha = 0.7213 / (1 + 1.079 / m);
+		}
+		double estimate = alpha * m * m / sum;
+		// linear counting is more accurate for small cardinalities
+		if(estimate <= 2.5 * m && zeros > 0)
+			estimate = m * Math.log((double) m / zeros);
+		return Math.round(estimate);
+	}
+
+	@Override
+	public String toString(){
+		return "HyperLogLog(precision = "+precision+", cardinality = "+cardinality()+")";
+	}
+}
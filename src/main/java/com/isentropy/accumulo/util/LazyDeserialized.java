@@ -0,0 +1,79 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package com.isentropy.accumulo.util;
+
+import org.apache.accumulo.core.data.ByteSequence;
+
+import com.isentropy.accumulo.collections.io.SerDe;
+
+/**
+ * holds serialized bytes and deserializes them on the first call to get(). 
+ * the bytes are referenced, not copied, so an iterator can reset() one holder per entry 
+ * without allocating, and entries whose object is never looked at are never deserialized.
+ */
+public class LazyDeserialized {
+	private SerDe serde;
+	private byte[] bytes;
+	private int offset,len;
+	private Object object;
+	private boolean deserialized;
+
+	public LazyDeserialized(SerDe serde){
+		this.serde = serde;
+	}
+
+	public LazyDeserialized reset(byte[] b, int offset, int len){
+		this.bytes = b;
+		this.offset = offset;
+		this.len = len;
+		object = null;
+		deserialized = false;
+		return this;
+	}
+	public LazyDeserialized reset(byte[] b){
+		return reset(b,0,b.length);
+	}
+	/**
+	 * @param bs eg Key.getRowData(). the backing array is referenced, not copied
+	 */
+	public LazyDeserialized reset(ByteSequence bs){
+		return reset(bs.getBackingArray(),bs.offset(),bs.length());
+	}
+
+	/**
+	 * @return the deserialized object. deserializes at most once per reset()
+	 */
+	public Object get(){
+		if(!deserialized){
+			object = Util.deserialize(serde, bytes, offset, len);
+			deserialized = true;
+		}
+		return object;
+	}
+
+	public boolean isDeserialized(){
+		return deserialized;
+	}
+	public SerDe getSerde(){
+		return serde;
+	}
+}
@@ -0,0 +1,170 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded, thread safe LRU cache with an optional time-to-live, used as a client-side near cache 
+ * in front of AccumuloSortedMap.get().
+ * 
+ * Entries are evicted in least recently used order when the cache holds more than maxEntries, 
+ * and are treated as missing once they are older than ttlMs. 
+ * Hit, miss, eviction and expiration counters are kept for sizing the cache.
+ *
+ */
+public class NearCache<K,V> {
+	private final int maxEntries;
+	private final long ttlMs;
+	private long hits=0,misses=0,evictions=0,expirations=0;
+	// incremented by invalidate() and clear(), see put(k,v,version)
+	private long version=0;
+	private final LinkedHashMap<K,CachedValue<V>> cache;
+
+	private static class CachedValue<V>{
+		final V value;
+		final long insertedMs;
+		CachedValue(V value,long insertedMs){
+			this.value = value;
+			this.insertedMs = insertedMs;
+		}
+	}
+
+	/**
+	 * @param maxEntries the maximum number of cached entries
+	 * @param ttlMs entries older than this are not returned. ttlMs <= 0 means no ttl
+	 */
+	public NearCache(final int maxEntries, long ttlMs){
+		this.maxEntries = maxEntries;
+		this.ttlMs = ttlMs;
+		cache = new LinkedHashMap<K,CachedValue<V>>(16,0.75f,true){
+			private static final long serialVersionUID = 1L;
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K,CachedValue<V>> eldest) {
+				if(size() > maxEntries){
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param k
+	 * @return the cached value, or null if k is not cached or has expired
+	 */
+	public synchronized V get(K k){
+		CachedValue<V> cv = cache.get(k);
+		if(cv == null){
+			misses++;
+			return null;
+		}
+		if(ttlMs > 0 && System.currentTimeMillis() - cv.insertedMs > ttlMs){
+			cache.remove(k);
+			expirations++;
+			misses++;
+			return null;
+		}
+		hits++;
+		return cv.value;
+	}
+
+	public synchronized void put(K k, V v){
+		cache.put(k, new CachedValue<V>(v,System.currentTimeMillis()));
+	}
+
+	/**
+	 * caches v unless invalidate() or clear() was called since getVersion() returned version. 
+	 * a reader that takes the version before reading v this way can't cache a value that a concurrent write replaced.
+	 * @return true if v was cached
+	 */
+	public synchronized boolean put(K k, V v, long version){
+		if(this.version != version)
+			return false;
+		put(k, v);
+		return true;
+	}
+
+	/**
+	 * @return the number of invalidate() and clear() calls so far
+	 */
+	public synchronized long getVersion(){
+		return version;
+	}
+
+	public synchronized void invalidate(K k){
+		version++;
+		cache.remove(k);
+	}
+
+	/**
+	 * removes k, which was just returned by get(), because the caller found its value stale for reasons 
+	 * other than ttl (eg the entry aged off). The lookup is recounted as an expiration and a miss instead of a hit.
+	 * @param k
+	 */
+	public synchronized void expire(K k){
+		if(cache.remove(k) != null){
+			expirations++;
+			hits--;
+			misses++;
+		}
+	}
+
+	public synchronized void clear(){
+		version++;
+		cache.clear();
+	}
+
+	public synchronized int size(){
+		return cache.size();
+	}
+	public int getMaxEntries(){
+		return maxEntries;
+	}
+	public long getTtlMs(){
+		return ttlMs;
+	}
+	public synchronized long getHits(){
+		return hits;
+	}
+	public synchronized long getMisses(){
+		return misses;
+	}
+	public synchronized long getEvictions(){
+		return evictions;
+	}
+	public synchronized long getExpirations(){
+		return expirations;
+	}
+	public synchronized void resetCounters(){
+		hits=misses=evictions=expirations=0;
+	}
+
+	@Override
+	public synchronized String toString(){
+		return "NearCache size = "+cache.size()+"/"+maxEntries+", hits = "+hits+", misses = "+misses+
+				", evictions = "+evictions+", expirations = "+expirations;
+	}
+}
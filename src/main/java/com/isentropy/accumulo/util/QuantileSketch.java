@@ -0,0 +1,274 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.util;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * KLL sketch for estimating quantiles of a stream of doubles in bounded memory. 
+ * level h holds items of weight 2^h; when a level fills up it is sorted and every other item is promoted to the next level.
+ * the sketch holds O(k) items regardless of how many are offered, and the rank error is roughly 1.7/k. 
+ * sketches can be merged, so per-tablet sketches combine into a sketch of the whole map.
+ */
+public class QuantileSketch implements Serializable{
+	private static final long serialVersionUID = 1L;
+	public static final int DEFAULT_K = 200;
+	public static final int MIN_K = 8;
+	private static final int MIN_LEVEL_CAPACITY = 2;
+	private static final double LEVEL_CAPACITY_DECAY = 2.0/3.0;
+
+	private final int k;
+	private long n = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private final List<double[]> levels = new ArrayList<double[]>();
+	private final List<Integer> levelSizes = new ArrayList<Integer>();
+	private final Random random = new Random(0);
+
+	public QuantileSketch(){
+		this(DEFAULT_K);
+	}
+	public QuantileSketch(int k){
+		if(k < MIN_K)
+			throw new IllegalArgumentException("k must be at least "+MIN_K);
+		this.k = k;
+	}
+
+	public int getK(){
+		return k;
+	}
+	/**
+	 * @return the number of items offered, including those of merged sketches
+	 */
+	public long getN(){
+		return n;
+	}
+	public double getMin(){
+		return min;
+	}
+	public double getMax(){
+		return max;
+	}
+	/**
+	 * @return the number of items retained by the sketch
+	 */
+	public int retained(){
+		int r=0;
+		for(int s : levelSizes)
+			r += s;
+		return r;
+	}
+
+	/**
+	 * NaN is ignored
+	 */
+	public void offer(double x){
+		if(Double.isNaN(x))
+			return;
+		updateMinMax(x,x);
+		n++;
+		append(0,x);
+		compress();
+	}
+
+	/**
+	 * adds the items summarized by other to this sketch
+	 */
+	public QuantileSketch merge(QuantileSketch other){
+		if(other.n == 0)
+			return this;
+		updateMinMax(other.min,other.max);
+		n += other.n;
+		for(int h=0;h<other.levels.size();h++){
+			double[] items = other.levels.get(h);
+			int size = other.levelSizes.get(h);
+			for(int i=0;i<size;i++)
+				append(h,items[i]);
+		}
+		compress();
+		return this;
+	}
+
+	/**
+	 * @param q between 0 and 1
+	 * @return the estimated q-quantile, or NaN if the sketch is empty
+	 */
+	public double quantile(double q){
+		if(q < 0 || q > 1)
+			throw new IllegalArgumentException("quantile must be between 0 and 1");
+		return quantiles(q)[0];
+	}
+
+	/**
+	 * computes several quantiles with one sort of the retained items
+	 */
+	public double[] quantiles(double ... qs){
+		double[] out = new double[qs.length];
+		if(n == 0){
+			Arrays.fill(out, Double.NaN);
+			return out;
+		}
+		int r = retained();
+		double[] values = new double[r];
+		long[] weights = new long[r];
+		sortedWeightedItems(values,weights);
+		long total = 0;
+		for(long w : weights)
+			total += w;
+		for(int i=0;i<qs.length;i++){
+			if(qs[i] <= 0){
+				out[i] = min;
+				continue;
+			}
+			if(qs[i] >= 1){
+				out[i] = max;
+				continue;
+			}
+			double target = qs[i]*total;
+			long cum = 0;
+			out[i] = max;
+			for(int j=0;j<r;j++){
+				cum += weights[j];
+				if(cum >= target){
+					out[i] = values[j];
+					break;
+				}
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * @return the estimated fraction of items <= x
+	 */
+	public double rank(double x){
+		if(n == 0)
+			return Double.NaN;
+		long below=0,total=0;
+		for(int h=0;h<levels.size();h++){
+			double[] items = levels.get(h);
+			int size = levelSizes.get(h);
+			long w = 1L << h;
+			for(int i=0;i<size;i++){
+				total += w;
+				if(items[i] <= x)
+					below += w;
+			}
+		}
+		return (double) below / total;
+	}
+
+	@Override
+	public String toString(){
+		return "QuantileSketch(k="+k+", n="+n+", min="+min+", max="+max+", median="+quantile(0.5)+")";
+	}
+
+	private void updateMinMax(double lo,double hi){
+		if(Double.isNaN(min) || lo < min)
+			min = lo;
+		if(Double.isNaN(max) || hi > max)
+			max = hi;
+	}
+
+	private void append(int h,double x){
+		while(levels.size() <= h){
+			levels.add(new double[MIN_LEVEL_CAPACITY]);
+			levelSizes.add(0);
+		}
+		double[] items = levels.get(h);
+		int size = levelSizes.get(h);
+		if(size == items.length){
+			items = Arrays.copyOf(items, 2*items.length);
+			levels.set(h, items);
+		}
+		items[size] = x;
+		levelSizes.set(h, size+1);
+	}
+
+	private int capacity(int h){
+		int depth = levels.size() - h - 1;
+		return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k*Math.pow(LEVEL_CAPACITY_DECAY, depth)));
+	}
+
+	/**
+	 * compacts each full level into the one above it, bottom up
+	 */
+	private void compress(){
+		for(int h=0;h<levels.size();h++){
+			int size = levelSizes.get(h);
+			if(size < capacity(h))
+				continue;
+			double[] items = levels.get(h);
+			Arrays.sort(items, 0, size);
+			// an odd item out stays on this level so no weight is lost
+			int pairs = size/2;
+			int offset = random.nextBoolean() ? 1 : 0;
+			for(int i=0;i<pairs;i++)
+				append(h+1,items[2*i+offset]);
+			if(size % 2 == 1){
+				items[0] = items[size-1];
+				levelSizes.set(h, 1);
+			}
+			else{
+				levelSizes.set(h, 0);
+			}
+			// lower levels shrink as the sketch grows taller
+			if(items.length > capacity(h))
+				levels.set(h, Arrays.copyOf(items, capacity(h)));
+		}
+	}
+
+	private void sortedWeightedItems(double[] values,long[] weights){
+		int r = values.length;
+		final double[] unsorted = new double[r];
+		long[] unsortedWeights = new long[r];
+		int j=0;
+		for(int h=0;h<levels.size();h++){
+			double[] items = levels.get(h);
+			int size = levelSizes.get(h);
+			for(int i=0;i<size;i++){
+				unsorted[j] = items[i];
+				unsortedWeights[j] = 1L << h;
+				j++;
+			}
+		}
+		Integer[] order = new Integer[r];
+		for(int i=0;i<r;i++)
+			order[i]=i;
+		Arrays.sort(order, new Comparator<Integer>(){
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Double.compare(unsorted[a], unsorted[b]);
+			}
+		});
+		for(int i=0;i<r;i++){
+			values[i] = unsorted[order[i]];
+			weights[i] = unsortedWeights[order[i]];
+		}
+	}
+}
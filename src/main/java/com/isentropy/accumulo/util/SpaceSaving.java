@@ -0,0 +1,213 @@
+/* 
+Accumulo Collections
+Copyright 2016 Isentropy LLC
+Written by Jonathan Wolff <jwolff@isentropy.com>
+Isentropy specializes in big data and quantitative programming consulting,
+with particular expertise in Accumulo development and installation. 
+More info at http://isentropy.com.
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package com.isentropy.accumulo.util;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Space-Saving summary of the most frequent items in a stream, using a fixed number of counters. 
+ * an item's estimated count overestimates its true count by at most getMaxError(), 
+ * and any item occurring more than n/capacity times is guaranteed to be tracked. 
+ * summaries can be merged, so per-tablet summaries combine into a summary of the whole map.
+ * items must implement equals() and hashCode().
+ */
+public class SpaceSaving implements Serializable{
+	private static final long serialVersionUID = 1L;
+	public static final int DEFAULT_CAPACITY = 1000;
+
+	private static class Counter implements Serializable{
+		private static final long serialVersionUID = 1L;
+		final Object item;
+		long count;
+		long error;
+		// breaks ties between equal counts in the TreeSet
+		long seq;
+		Counter(Object item){
+			this.item = item;
+		}
+	}
+	private static final Comparator<Counter> BY_COUNT = new Comparator<Counter>(){
+		@Override
+		public int compare(Counter a, Counter b) {
+			int c = Long.compare(a.count, b.count);
+			return c != 0 ? c : Long.compare(a.seq, b.seq);
+		}
+	};
+
+	private final int capacity;
+	private long n = 0;
+	private long nextSeq = 0;
+	private final HashMap<Object,Counter> counters = new HashMap<Object,Counter>();
+	// rebuilt from counters after deserialization
+	private transient TreeSet<Counter> byCount = new TreeSet<Counter>(BY_COUNT);
+
+	public SpaceSaving(){
+		this(DEFAULT_CAPACITY);
+	}
+	public SpaceSaving(int capacity){
+		if(capacity < 1)
+			throw new IllegalArgumentException("capacity must be positive");
+		this.capacity = capacity;
+	}
+
+	public int getCapacity(){
+		return capacity;
+	}
+	/**
+	 * @return the total weight offered, including that of merged summaries
+	 */
+	public long getN(){
+		return n;
+	}
+	/**
+	 * @return the most any estimated count can exceed the true count
+	 */
+	public long getMaxError(){
+		long max = 0;
+		for(Counter c : counters.values())
+			max = Math.max(max, c.error);
+		return max;
+	}
+
+	public void offer(Object item){
+		offer(item,1);
+	}
+	public void offer(Object item,long weight){
+		n += weight;
+		add(item,weight,0);
+	}
+
+	/**
+	 * @return the estimated count of item, or 0 if it isn't tracked
+	 */
+	public long estimate(Object item){
+		Counter c = counters.get(item);
+		return c == null ? 0 : c.count;
+	}
+
+	/**
+	 * adds the items summarized by other to this summary. 
+	 * an item untracked by a full summary may have occurred up to that summary's minimum count times, 
+	 * so that minimum is added to the count and error of every item the summary doesn't track. 
+	 * the capacity most frequent of the combined counters are kept.
+	 */
+	public SpaceSaving merge(SpaceSaving other){
+		long thisMin = minCount();
+		long otherMin = other.minCount();
+		HashMap<Object,Counter> merged = new HashMap<Object,Counter>();
+		for(Counter c : counters.values()){
+			Counter m = new Counter(c.item);
+			m.count = c.count;
+			m.error = c.error;
+			Counter o = other.counters.get(c.item);
+			m.count += o == null ? otherMin : o.count;
+			m.error += o == null ? otherMin : o.error;
+			merged.put(c.item, m);
+		}
+		for(Counter o : other.counters.values()){
+			if(merged.containsKey(o.item))
+				continue;
+			Counter m = new Counter(o.item);
+			m.count = o.count + thisMin;
+			m.error = o.error + thisMin;
+			merged.put(o.item, m);
+		}
+		List<Counter> sorted = new ArrayList<Counter>(merged.values());
+		Collections.sort(sorted, Collections.reverseOrder(BY_COUNT));
+		n += other.n;
+		counters.clear();
+		byCount.clear();
+		for(Counter m : sorted){
+			if(counters.size() >= capacity)
+				break;
+			m.seq = nextSeq++;
+			counters.put(m.item, m);
+			byCount.add(m);
+		}
+		return this;
+	}
+
+	/**
+	 * @return up to k (item, estimated count) entries, most frequent first
+	 */
+	public List<Map.Entry<Object,Long>> top(int k){
+		List<Map.Entry<Object,Long>> out = new ArrayList<Map.Entry<Object,Long>>();
+		for(Counter c : byCount.descendingSet()){
+			if(out.size() >= k)
+				break;
+			out.add(new AbstractMap.SimpleImmutableEntry<Object,Long>(c.item,c.count));
+		}
+		return out;
+	}
+
+	@Override
+	public String toString(){
+		return "SpaceSaving(capacity="+capacity+", n="+n+", top="+top(10)+")";
+	}
+
+	// an untracked item occurred at most this many times
+	private long minCount(){
+		return counters.size() < capacity ? 0 : byCount.first().count;
+	}
+
+	private void add(Object item,long weight,long error){
+		Counter c = counters.get(item);
+		if(c == null){
+			if(counters.size() < capacity){
+				c = new Counter(item);
+			}
+			else{
+				// replace the least frequent item, inheriting its count as error
+				Counter min = byCount.pollFirst();
+				counters.remove(min.item);
+				c = new Counter(item);
+				c.count = min.count;
+				c.error = min.count;
+			}
+			counters.put(item, c);
+		}
+		else{
+			byCount.remove(c);
+		}
+		c.count += weight;
+		c.error += error;
+		c.seq = nextSeq++;
+		byCount.add(c);
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException{
+		in.defaultReadObject();
+		byCount = new TreeSet<Counter>(BY_COUNT);
+		byCount.addAll(counters.values());
+	}
+}
@@ -24,6 +24,7 @@ package com.isentropy.accumulo.util;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Map;
 import java.util.Random;
 
@@ -35,10 +36,13 @@ import org.apache.accumulo.core.client.Scanner;
 import org.apache.accumulo.core.client.mock.MockInstance;
 import org.apache.accumulo.core.client.security.tokens.AuthenticationToken;
 import org.apache.accumulo.core.client.security.tokens.PasswordToken;
+import org.apache.accumulo.core.data.ByteSequence;
 import org.apache.accumulo.core.data.Key;
 import org.apache.accumulo.core.data.Value;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import com.isentropy.accumulo.collections.io.BufferedSerDe;
+import com.isentropy.accumulo.collections.io.SerDe;
 import com.isentropy.accumulo.iterators.LongCountAggregateIterator;
 
 public class Util {
@@ -76,6 +80,59 @@ public class Util {
 		return rslt;
 	}
 
+	/**
+	 * deserializes a slice of an array, without copying it if serde is a BufferedSerDe
+	 */
+	public static Object deserialize(SerDe serde, byte[] b, int offset, int len){
+		if(serde instanceof BufferedSerDe)
+			return ((BufferedSerDe) serde).deserialize(b, offset, len);
+		if(offset == 0 && len == b.length)
+			return serde.deserialize(b);
+		return serde.deserialize(Arrays.copyOfRange(b, offset, offset+len));
+	}
+	/**
+	 * deserializes a ByteSequence such as Key.getRowData(), without copying it if serde is a BufferedSerDe
+	 */
+	public static Object deserialize(SerDe serde, ByteSequence bs){
+		return deserialize(serde, bs.getBackingArray(), bs.offset(), bs.length());
+	}
+
+	/**
+	 * 64 bit MurmurHash2 (MurmurHash64A). fast, non-cryptographic and allocation free.
+	 */
+	public static long murmurHash64(byte[] b, int offset, int len, long seed){
+		final long m = 0xc6a4a7935bd1e995L;
+		final int r = 47;
+		long h = seed ^ (len * m);
+		int end = offset + (len & ~7);
+		for(int p=offset;p<end;p+=8){
+			long k = (b[p] & 0xffL) | ((b[p+1] & 0xffL) << 8) | ((b[p+2] & 0xffL) << 16) | ((b[p+3] & 0xffL) << 24) |
+					((b[p+4] & 0xffL) << 32) | ((b[p+5] & 0xffL) << 40) | ((b[p+6] & 0xffL) << 48) | ((b[p+7] & 0xffL) << 56);
+			k *= m;
+			k ^= k >>> r;
+			k *= m;
+			h ^= k;
+			h *= m;
+		}
+		switch(len & 7){
+		case 7: h ^= (b[end+6] & 0xffL) << 48;
+		case 6: h ^= (b[end+5] & 0xffL) << 40;
+		case 5: h ^= (b[end+4] & 0xffL) << 32;
+		case 4: h ^= (b[end+3] & 0xffL) << 24;
+		case 3: h ^= (b[end+2] & 0xffL) << 16;
+		case 2: h ^= (b[end+1] & 0xffL) << 8;
+		case 1: h ^= (b[end] & 0xffL);
+				h *= m;
+		}
+		h ^= h >>> r;
+		h *= m;
+		h ^= h >>> r;
+		return h;
+	}
+	public static long murmurHash64(byte[] b, long seed){
+		return murmurHash64(b, 0, b.length, seed);
+	}
+
 	public static String bytesToHex(byte[] bytes) {
 	    char[] hexChars = new char[bytes.length * 2];
 	    for ( int j = 0; j < bytes.length; j++ ) {
@@ -85,6 +142,21 @@ public class Util {
 	    }
 	    return new String(hexChars);
 	}
+	/**
+	 * inverse of bytesToHex(). accepts upper or lower case digits.
+	 */
+	public static byte[] hexToBytes(String hex) {
+		if(hex.length() % 2 != 0)
+			throw new IllegalArgumentException("odd length hex string");
+		byte[] b = new byte[hex.length() / 2];
+		for(int j=0;j<b.length;j++){
+			int hi = Character.digit(hex.charAt(j*2), 16), lo = Character.digit(hex.charAt(j*2+1), 16);
+			if(hi < 0 || lo < 0)
+				throw new IllegalArgumentException("invalid hex string: "+hex);
+			b[j] = (byte) ((hi << 4) | lo);
+		}
+		return b;
+	}
 	public static String randomHexString(int n){
 		return bytesToHex(randomBytes(n));
 	}
@@ -25,22 +25,43 @@ package com.isentropy.accumulo.test;
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Map.Entry;
 import java.util.NoSuchElementException;
 import java.util.Random;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
 
 import org.apache.accumulo.core.client.AccumuloException;
 import org.apache.accumulo.core.client.AccumuloSecurityException;
 import org.apache.accumulo.core.client.Connector;
 import org.apache.accumulo.core.client.TableExistsException;
+import org.apache.accumulo.core.client.MutationsRejectedException;
 import org.apache.accumulo.core.client.TableNotFoundException;
 import org.apache.accumulo.core.client.ZooKeeperInstance;
 import org.apache.accumulo.core.client.mock.MockInstance;
@@ -48,6 +69,9 @@ import org.apache.accumulo.core.client.security.tokens.PasswordToken;
 import org.apache.accumulo.minicluster.MiniAccumuloCluster;
 import org.apache.commons.math3.stat.descriptive.StatisticalSummary;
 import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+import org.apache.hadoop.io.Text;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
 
 import com.isentropy.accumulo.collections.AccumuloSortedMap;
 import com.isentropy.accumulo.collections.AccumuloSortedProperties;
@@ -57,10 +81,22 @@ import com.isentropy.accumulo.collections.ForeignKey;
 import static com.isentropy.accumulo.collections.ForeignKey.resolve;
 
 import com.isentropy.accumulo.collections.MapAggregates;
+import com.isentropy.accumulo.collections.Sampler;
 import com.isentropy.accumulo.collections.factory.AccumuloSortedMapFactory;
+import com.isentropy.accumulo.collections.io.BufferedSerDe;
+import com.isentropy.accumulo.collections.io.DoubleKeySerde;
 import com.isentropy.accumulo.collections.io.FixedPointSerde;
+import com.isentropy.accumulo.collections.io.FloatKeySerde;
+import com.isentropy.accumulo.collections.io.IntKeySerde;
+import com.isentropy.accumulo.collections.io.JavaSerializationSerde;
+import com.isentropy.accumulo.collections.io.LongKeySerde;
 import com.isentropy.accumulo.collections.io.SerDe;
 import com.isentropy.accumulo.collections.transform.KeyValueTransformer;
+import com.isentropy.accumulo.iterators.SamplingFilter;
+import com.isentropy.accumulo.util.HyperLogLog;
+import com.isentropy.accumulo.util.NearCache;
+import com.isentropy.accumulo.util.QuantileSketch;
+import com.isentropy.accumulo.util.SpaceSaving;
 import com.isentropy.accumulo.util.TsvInputStreamIterator;
 import com.isentropy.accumulo.util.Util;
 
@@ -223,8 +259,82 @@ extends TestCase
 				fail();
 			prev = d;
 		}
+
+		// buffered serialization writes the same bytes as serialize() and reads them back from an offset
+		BufferedSerDe bs = new FixedPointSerde();
+		ByteBuffer buf = ByteBuffer.allocate(64);
+		Object[] values = {-2l, 1.5, "a", "\u00e9\u4e2d\ud83d\ude00", byteKey};
+		for(Object o : values){
+			buf.clear();
+			buf.put((byte) 7);
+			int len = bs.serialize(o, buf);
+			assertTrue(Arrays.equals(Arrays.copyOfRange(buf.array(), 1, 1+len), bs.serialize(o)));
+			Object d = bs.deserialize(buf.array(), 1, len);
+			assertTrue(o instanceof byte[] ? Arrays.equals((byte[]) d, (byte[]) o) : d.equals(o));
+		}
+		// unpaired surrogates are written as '?', like String.getBytes()
+		buf.clear();
+		int len = bs.serialize("\ud800x", buf);
+		assertTrue(Arrays.equals(Arrays.copyOf(buf.array(), len), bs.serialize("\ud800x")));
+		buf.clear();
+		buf.position(60);
+		assertTrue(bs.serialize("too long", buf) == -1);
+		assertTrue(buf.position() == 60);
+		// keys larger than the map's serialization buffer
+		char[] big = new char[AccumuloSortedMap.SERIALIZATION_BUFFER_BYTES*2];
+		Arrays.fill(big, 'x');
+		asm.put(new String(big), "big");
+		assertTrue(asm.get(new String(big)).equals("big"));
 	}
 	
+	public void testPrimitiveSerdes(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Double,Float> doubles = new AccumuloSortedMap(c,"doubles"+Util.randomHexString(10));
+		doubles.setKeySerde(new DoubleKeySerde()).setValueSerde(new FloatKeySerde());
+		double[] sorted = {Double.NEGATIVE_INFINITY, -1e300, -1.5, -Double.MIN_VALUE, 0, 1e-300, 0.1, 2.5, Double.MAX_VALUE, Double.POSITIVE_INFINITY};
+		for(int i=sorted.length-1;i>=0;i--)
+			doubles.put(sorted[i], (float) sorted[i]);
+		int i=0;
+		for(Entry<Double,Float> e : doubles.entrySet()){
+			assertTrue(e.getKey() == sorted[i]);
+			assertTrue(e.getValue() == (float) sorted[i]);
+			i++;
+		}
+		assertTrue(i == sorted.length);
+
+		AccumuloSortedMap<Integer,Long> ints = new AccumuloSortedMap(c,"ints"+Util.randomHexString(10));
+		ints.setKeySerde(new IntKeySerde()).setValueSerde(new LongKeySerde());
+		ints.put(Integer.MAX_VALUE, 1l);
+		ints.put(-7, Long.MIN_VALUE);
+		ints.put(Integer.MIN_VALUE, Long.MAX_VALUE);
+		assertTrue(ints.firstKey() == Integer.MIN_VALUE);
+		assertTrue(ints.lastKey() == Integer.MAX_VALUE);
+		assertTrue(ints.get(-7) == Long.MIN_VALUE);
+		assertTrue(new IntKeySerde().serialize(1).length == 4);
+
+		AccumuloSortedMap<Long,Long> timeseries = new AccumuloSortedMap(c,"timeseries"+Util.randomHexString(10));
+		timeseries.setKeySerde(new LongKeySerde()).setValueSerde(new LongKeySerde());
+		for(long t=-5;t<5;t++)
+			timeseries.putLong(t, 10*t);
+		assertTrue(timeseries.getLong(-3, 0) == -30);
+		assertTrue(timeseries.getLong(100, -1) == -1);
+		assertTrue(timeseries.get(4l).equals(40l));
+		assertTrue(timeseries.firstKey().equals(-5l));
+		assertTrue(timeseries.subMap(0l, 5l).getLong(-3, 0) == 0);
+		assertTrue(timeseries.subMap(0l, 5l).getLong(3, 0) == 30);
+
+		AccumuloSortedMap<Long,Double> measurements = new AccumuloSortedMap(c,"measurements"+Util.randomHexString(10));
+		measurements.setKeySerde(new LongKeySerde()).setValueSerde(new DoubleKeySerde());
+		measurements.putDouble(1000l, 0.3);
+		assertTrue(measurements.getDouble(1000l, 0) == 0.3);
+		assertTrue(measurements.get(1000l) == 0.3);
+
+		// other serdes are passed boxed primitives
+		AccumuloSortedMap<Long,Long> boxed = new AccumuloSortedMap(c,"boxed"+Util.randomHexString(10));
+		boxed.putLong(1, 2);
+		assertTrue(boxed.get(1l).equals(2l));
+		assertTrue(boxed.getLong(1, 0) == 2);
+	}
+
 	public void testMapFactory(Connector c) throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException, TableNotFoundException{
 		AccumuloSortedMapFactory fact = new AccumuloSortedMapFactory(c,"factory_table");
 		String tableName = "test_map_factory";
@@ -263,6 +373,7 @@ extends TestCase
 		StatisticalSummary row1= mm.rowStats().get(1);
 		assertTrue(row1.getMean()==3.0);
 		assertTrue(row1.getMax()==4.0);
+		assertTrue(mm.rowQuantiles().get(1).quantile(0.5) == 3.0);
 		// size should reflect # keys
 		assertTrue(mm.size()==2);
 		// count multiple values
@@ -292,11 +403,817 @@ extends TestCase
 	    
 		
 		
+	}
+	public void testBatchLookup(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Number,Number> asm = new AccumuloSortedMap(c,"batch"+Util.randomHexString(10));
+		for(long i=0;i<100;i++){
+			asm.putWithoutGet(i, 3*i);
+		}
+		Collection<Number> keys = new ArrayList<Number>();
+		keys.add(5);
+		keys.add(5);
+		keys.add(17l);
+		keys.add(99);
+		keys.add(1000);
+		Map<Number,Number> found = asm.getBatch(keys);
+		assertTrue(found.size() == 3);
+		// results are keyed by the objects that were passed in
+		assertTrue(found.get(5).equals(15l));
+		assertTrue(found.get(17l).equals(51l));
+		assertTrue(found.get(99).equals(297l));
+		assertFalse(found.containsKey(1000));
+		
+		// submaps only see keys in their range
+		Map<Number,Number> subFound = asm.subMap(10, 50).getBatch(keys);
+		assertTrue(subFound.size() == 1);
+		assertTrue(subFound.containsKey(17l));
+		
+		// derived maps apply their iterators
+		assertTrue(asm.regexValueFilter("^5").getBatch(keys).keySet().equals(Collections.singleton(17l)));
+		assertTrue(new EmptyAccumuloSortedMap().getBatch(keys).isEmpty());
+	}
+	public void testNearCache(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException, ExecutionException, MutationsRejectedException{
+		AccumuloSortedMap<Number,Number> asm = new AccumuloSortedMap(c,"nearcache"+Util.randomHexString(10));
+		AccumuloSortedMap<Number,Number> otherClient = new AccumuloSortedMap(c,asm.getTable());
+		asm.setNearCache(10, 60000);
+		asm.put(1, 100);
+		assertTrue(asm.get(1).equals(100l));
+		assertTrue(asm.containsKey(1));
+		assertTrue(asm.getNearCache().getHits() == 1);
+		// writes by other clients aren't seen until the cached entry is invalidated
+		otherClient.put(1, 101);
+		assertTrue(asm.get(1).equals(100l));
+		// own writes invalidate
+		asm.put(1, 102);
+		assertTrue(asm.get(1).equals(102l));
+		asm.remove(1);
+		assertNull(asm.get(1));
+		for(int i=100;i<120;i++){
+			asm.putWithoutGet(i, i);
+			asm.get(i);
+		}
+		assertTrue(asm.getNearCache().size() == 10);
+		assertTrue(asm.getNearCache().getEvictions() == 10);
+		// gets before a buffered write is flushed must not leave the old value cached
+		asm.setGroupCommit(200, 1 << 20);
+		asm.put(5, 0);
+		assertTrue(asm.get(5).equals(0l));
+		CompletableFuture<Void> write = asm.putAsync(5, 1);
+		asm.get(5);
+		write.get();
+		assertTrue(asm.get(5).equals(1l));
+		asm.put(6, 0);
+		asm.get(6);
+		asm.cachePut(6, 1);
+		asm.get(6);
+		asm.flushCachedEdits();
+		assertTrue(asm.get(6).equals(1l));
+		// a read that overlaps an invalidation isn't cached
+		NearCache<String,String> nc = new NearCache<String,String>(10, 0);
+		long version = nc.getVersion();
+		nc.invalidate("a");
+		assertFalse(nc.put("a", "old", version));
+		assertNull(nc.get("a"));
+		assertTrue(nc.put("a", "new", nc.getVersion()) && nc.get("a").equals("new"));
+		// cached entries respect the entry timeout
+		asm.setTimeOutMs(1000);
+		asm.put(1000, 1);
+		assertTrue(asm.get(1000).equals(1l));
+		Thread.sleep(1100);
+		assertNull(asm.get(1000));
+		assertTrue(asm.getNearCache().getExpirations() == 1);
+		System.out.println(asm.getNearCache());
+	}
+	public void testParallelImport(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Long,Long> serial = new AccumuloSortedMap(c,"serialimport"+Util.randomHexString(10));
+		AccumuloSortedMap<Long,Long> parallel = new AccumuloSortedMap(c,"parallelimport"+Util.randomHexString(10));
+		long serialChecksum = serial.importAll(new ImportSimulationIterator(5500));
+		long parallelChecksum = parallel.importAll(new ImportSimulationIterator(5500),null,true,4);
+		assertTrue(serialChecksum == parallelChecksum);
+		assertTrue(parallel.size() == 5500);
+		assertTrue(parallel.get(4321l).equals(4322l));
+		assertTrue(parallel.checksum() == serial.checksum());
+		// keys repeated across chunks keep their last value, and are counted and indexed once
+		AccumuloSortedMap<Long,Long> repeated = new AccumuloSortedMap(c,"repeatedimport"+Util.randomHexString(10));
+		repeated.setCounted(true);
+		repeated.addValueIndex();
+		List<Entry<Long,Long>> entries = new ArrayList<Entry<Long,Long>>();
+		for(long pass=0;pass<3;pass++){
+			for(long i=0;i<3000;i++)
+				entries.add(new AbstractMap.SimpleImmutableEntry<Long,Long>(i, 10*i+pass));
+		}
+		repeated.importAll(entries.iterator(),null,false,4);
+		assertTrue(repeated.size() == 3000);
+		assertTrue(repeated.get(1234l).equals(12342l));
+		assertTrue(repeated.keysForValue(12342l).equals(Collections.singleton(1234l)));
+		assertTrue(repeated.keysForValue(12341l).isEmpty());
+	}
+	public void testBulkImport(Connector c) throws AccumuloException, AccumuloSecurityException, TableNotFoundException, IOException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"bulkimport"+Util.randomHexString(10));
+		TreeSet<Text> splits = new TreeSet<Text>();
+		splits.add(new Text(asm.getKeySerde().serialize(1000l)));
+		splits.add(new Text(asm.getKeySerde().serialize(3000l)));
+		c.tableOperations().addSplits(asm.getTable(), splits);
+		asm.setBulkImportRunBytes(20000);
+		String workDir = Files.createTempDirectory("bulkimport").toString();
+		long checksum = asm.bulkImportAll(new ImportSimulationIterator(5000),null,true,workDir,true);
+		assertTrue(checksum == new AccumuloSortedMap(c,"serialimport"+Util.randomHexString(10)).importAll(new ImportSimulationIterator(5000)));
+		assertTrue(asm.size() == 5000);
+		assertTrue(asm.get(2999l).equals(3000l));
+		assertTrue(asm.get(3001l).equals(3002l));
+		// later runs overwrite earlier ones
+		asm.bulkImportAll(Collections.singletonMap(7l, 70l).entrySet().iterator(),null,false,workDir,false);
+		assertTrue(asm.get(7l).equals(70l));
+		assertTrue(asm.size() == 5000);
+		assertTrue(new File(workDir).list().length == 0);
+	}
+	public void testDistinctCount(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"distinct"+Util.randomHexString(10));
+		HashMap<Long,Long> m = new HashMap<Long,Long>();
+		for(long i=0;i<20000;i++)
+			m.put(i, i % 3000);
+		asm.putAll(m);
+		long distinct = asm.distinctValues();
+		assertTrue(Math.abs(distinct - 3000) < 150);
+		long keys = MapAggregates.distinctKeys(asm);
+		assertTrue(Math.abs(keys - 20000) < 1000);
+		long few = asm.subMap(0l, 100l).distinctValues();
+		assertTrue(few >= 99 && few <= 101);
+		HyperLogLog sketch = MapAggregates.distinctSketch(asm.subMap(0l, 1000l), false, 14, false);
+		sketch.merge(MapAggregates.distinctSketch(asm.subMap(1000l, 2000l), false, 14, false));
+		assertTrue(Math.abs(sketch.cardinality() - 2000) < 60);
+	}
+	public void testQuantiles(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"quantiles"+Util.randomHexString(10));
+		HashMap<Long,Long> m = new HashMap<Long,Long>();
+		for(long i=0;i<50000;i++)
+			m.put(i, (i*7919) % 50000);
+		asm.putAll(m);
+		double[] q = MapAggregates.quantiles(asm, 0, 0.5, 0.99, 1);
+		assertTrue(q[0] == 0 && q[3] == 49999);
+		assertTrue(Math.abs(q[1] - 25000) < 1000);
+		assertTrue(Math.abs(q[2] - 49500) < 1000);
+		assertTrue(Math.abs(asm.quantile(0.999) - 49950) < 1000);
+		assertTrue(Double.isNaN(asm.subMap(-10l, -1l).quantile(0.5)));
+
+		QuantileSketch big = new QuantileSketch();
+		QuantileSketch other = new QuantileSketch();
+		for(int i=0;i<1000000;i++){
+			big.offer(i);
+			other.offer(-i);
+		}
+		// memory is bounded regardless of stream length
+		assertTrue(big.retained() < 4*QuantileSketch.DEFAULT_K);
+		big.merge(other);
+		assertTrue(big.getN() == 2000000);
+		assertTrue(Math.abs(big.quantile(0.5)) < 20000);
+		assertTrue(Math.abs(big.rank(0) - 0.5) < 0.01);
+	}
+	public static class ReverseNumberComparator implements Comparator<Number>{
+		@Override
+		public int compare(Number a, Number b) {
+			return Double.compare(b.doubleValue(), a.doubleValue());
+		}
+	}
+	public void testTopK(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"topk"+Util.randomHexString(10));
+		HashMap<Long,Long> m = new HashMap<Long,Long>();
+		for(long i=0;i<10000;i++)
+			m.put(i, (i*7919) % 10000);
+		asm.putAll(m);
+		List<Map.Entry> top = asm.topK(5);
+		assertTrue(top.size() == 5);
+		for(int i=0;i<5;i++){
+			Map.Entry e = top.get(i);
+			assertTrue(((Number) e.getValue()).longValue() == 9999-i);
+			assertTrue(m.get(((Number) e.getKey()).longValue()).equals(((Number) e.getValue()).longValue()));
+		}
+		List<Map.Entry> bottom = MapAggregates.topK(asm, 3, ReverseNumberComparator.class, false);
+		assertTrue(((Number) bottom.get(0).getValue()).longValue() == 0);
+		assertTrue(((Number) bottom.get(2).getValue()).longValue() == 2);
+		assertTrue(asm.subMap(-10l, -1l).topK(5).isEmpty());
+
+		AccumuloSortedMap<Long,Long> skewed = new AccumuloSortedMap(c,"heavyhitters"+Util.randomHexString(10));
+		m.clear();
+		for(long i=0;i<10000;i++)
+			m.put(i, i % 10 == 0 ? 7 : i % 20 == 1 ? 8 : 100+i);
+		skewed.putAll(m);
+		List<Map.Entry<Object,Long>> hh = MapAggregates.heavyHitters(skewed, 2);
+		assertTrue(((Number) hh.get(0).getKey()).longValue() == 7 && hh.get(0).getValue() >= 1000);
+		assertTrue(((Number) hh.get(1).getKey()).longValue() == 8 && hh.get(1).getValue() >= 500);
+
+		SpaceSaving ss = new SpaceSaving(10);
+		for(int i=0;i<1000;i++)
+			ss.offer(i % 3 == 0 ? "x" : Integer.toString(i));
+		assertTrue(ss.top(1).get(0).getKey().equals("x"));
+		assertTrue(ss.estimate("x") - 334 <= ss.getMaxError());
+		// z is tracked by a but was evicted from b, so b's minimum count is added to it
+		SpaceSaving a = new SpaceSaving(2), b = new SpaceSaving(2);
+		a.offer("z",10);
+		a.offer("x",1);
+		b.offer("z",3);
+		b.offer("y",6);
+		b.offer("w",5);
+		a.merge(b);
+		assertTrue(a.getN() == 25);
+		assertTrue(a.estimate("z") >= 13 && a.estimate("z") - a.getMaxError() <= 13);
+		assertTrue(a.estimate("w") >= 5 && a.estimate("w") - a.getMaxError() <= 5);
+		assertTrue(a.top(1).get(0).getKey().equals("z"));
+	}
+	public void testFirstLastKey(Connector c) throws AccumuloException, AccumuloSecurityException, TableNotFoundException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"lastkey"+Util.randomHexString(10));
+		TreeSet<Text> splits = new TreeSet<Text>();
+		for(long i=0;i<1000;i+=100)
+			splits.add(new Text(asm.getKeySerde().serialize(i)));
+		c.tableOperations().addSplits(asm.getTable(), splits);
+		// trailing tablets are empty
+		for(long i=-50;i<250;i++)
+			asm.put(i, i);
+		assertTrue(asm.firstKey() == -50l);
+		assertTrue(asm.lastKey() == 249l);
+		assertTrue(asm.subMap(10l, 150l).lastKey() == 149l);
+		assertTrue(asm.subMap(10l, 150l).firstKey() == 10l);
+		assertTrue(asm.headMap(100l).lastKey() == 99l);
+		assertTrue(asm.tailMap(500l).isEmpty());
+		try{
+			asm.tailMap(500l).lastKey();
+			fail();
+		}
+		catch(NoSuchElementException e){}
+
+		AccumuloSortedMap<String,Long> strings = new AccumuloSortedMap(c,"lastkeystr"+Util.randomHexString(10));
+		String[] keys = {"", "a", "ab", "abc", "ab\u00ff", "b", "b\u0000", "zz", "zz\uffff"};
+		TreeSet<String> sorted = new TreeSet<String>();
+		for(String k : keys){
+			strings.put(k, 1l);
+			sorted.add(k);
+			assertTrue(strings.lastKey().equals(sorted.last()));
+		}
+		assertTrue(strings.firstKey().equals(""));
+		assertTrue(strings.headMap("b").lastKey().equals("ab\u00ff"));
+		assertTrue(strings.subMap("a", "abc").lastKey().equals("ab"));
+	}
+	public void testCountedMap(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException, ExecutionException, TableNotFoundException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"counted"+Util.randomHexString(10));
+		assertTrue(asm.isEmpty());
+		for(long i=0;i<10;i++)
+			asm.put(i, i);
+		assertFalse(asm.isEmpty());
+		asm.setCounted(true);
+		assertTrue(asm.isCounted());
+		assertTrue(asm.sizeAsLong() == 10);
+		asm.put(10l, 10l);
+		asm.put(5l, 50l);
+		asm.remove(3l);
+		asm.remove(3l);
+		asm.putWithoutGet(11l, 11l);
+		asm.putWithoutGet(11l, 12l);
+		asm.putLong(12l, 12l);
+		asm.putLong(12l, 13l);
+		assertTrue(asm.sizeAsLong() == 12);
+		asm.putAsync(13l, 13l).get();
+		asm.removeAsync(0l).get();
+		assertTrue(asm.sizeAsLong() == 12);
+		// overlaps existing keys, and repeats keys across import chunks
+		List<Entry<Long,Long>> entries = new ArrayList<Entry<Long,Long>>();
+		for(long i=0;i<2500;i++)
+			entries.add(new AbstractMap.SimpleEntry<Long,Long>(i % 2000, i));
+		asm.importAll(entries.iterator());
+		assertTrue(asm.sizeAsLong() == 2000);
+		asm.importAll(entries.iterator(),null,false,4);
+		assertTrue(asm.sizeAsLong() == 2000);
+		assertTrue(asm.sizeAsLong() == MapAggregates.count(asm));
+		// counted mode is detected when the map is reopened
+		AccumuloSortedMap<Long,Long> reopened = new AccumuloSortedMap(c,asm.getTable());
+		assertTrue(reopened.isCounted());
+		reopened.remove(1999l);
+		assertTrue(asm.sizeAsLong() == 1999);
+		assertTrue(asm.recount() == 1999 && asm.sizeAsLong() == 1999);
+		// submaps are still counted by scanning
+		assertTrue(asm.subMap(0l, 100l).sizeAsLong() == 100);
+		asm.setClearable(true);
+		asm.clear();
+		assertTrue(asm.isCounted() && asm.sizeAsLong() == 0 && asm.isEmpty());
+		asm.put(1l, 1l);
+		asm.setCounted(false);
+		assertFalse(asm.isCounted());
+		assertFalse(c.tableOperations().exists(asm.getTable()+AccumuloSortedMap.SIZE_TABLE_SUFFIX));
+		assertTrue(asm.sizeAsLong() == 1);
+		// an unrelated map named like a size table is never counted into or deleted
+		String name = "orders"+Util.randomHexString(10);
+		AccumuloSortedMap<Long,Long> unrelated = new AccumuloSortedMap(c,name+AccumuloSortedMap.SIZE_TABLE_SUFFIX);
+		unrelated.put(1l, 1l);
+		AccumuloSortedMap<Long,Long> orders = new AccumuloSortedMap(c,name);
+		assertFalse(orders.isCounted());
+		orders.put(2l, 2l);
+		orders.setCounted(false);
+		boolean refused = false;
+		try{
+			orders.setCounted(true);
+		}
+		catch(RuntimeException e){
+			refused = true;
+		}
+		assertTrue(refused && !orders.isCounted());
+		orders.setClearable(true).delete();
+		assertTrue(unrelated.size() == 1 && unrelated.get(1l) == 1);
+	}
+	public void testStreams(Connector c) throws AccumuloException, AccumuloSecurityException, TableNotFoundException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"streams"+Util.randomHexString(10));
+		TreeSet<Text> splits = new TreeSet<Text>();
+		for(long i=100;i<1000;i+=100)
+			splits.add(new Text(asm.getKeySerde().serialize(i)));
+		c.tableOperations().addSplits(asm.getTable(), splits);
+		HashMap<Long,Long> m = new HashMap<Long,Long>();
+		for(long i=0;i<1000;i++)
+			m.put(i, 2*i);
+		asm.putAll(m);
+
+		Spliterator<Entry<Long,Long>> split = asm.entrySet().spliterator();
+		assertTrue(split.hasCharacteristics(Spliterator.SORTED));
+		assertTrue(split.trySplit() != null);
+
+		final List<Long> keys = new ArrayList<Long>();
+		asm.keySet().stream().forEachOrdered(new Consumer<Long>(){
+			@Override
+			public void accept(Long k) {
+				keys.add(k);
+			}
+		});
+		assertTrue(keys.size() == 1000);
+		for(int i=0;i<1000;i++)
+			assertTrue(keys.get(i) == i);
+
+		ToLongFunction<Entry<Long,Long>> value = new ToLongFunction<Entry<Long,Long>>(){
+			@Override
+			public long applyAsLong(Entry<Long, Long> e) {
+				return e.getValue();
+			}
+		};
+		assertTrue(asm.parallelStream().mapToLong(value).sum() == 999*1000);
+		assertTrue(asm.stream().mapToLong(value).sum() == 999*1000);
+		assertTrue(asm.values().parallelStream().count() == 1000);
+		assertTrue(asm.subMap(150l, 450l).parallelStream().count() == 300);
+		assertTrue(asm.subMap(150l, 450l).stream().findFirst().get().getKey() == 150);
+		assertTrue(asm.tailMap(5000l).parallelStream().count() == 0);
+	}
+	/**
+	 * requests entries in chunks, and optionally cancels after cancelAfter entries
+	 */
+	public static class CollectingSubscriber<T> implements Subscriber<T>{
+		final List<T> received = Collections.synchronizedList(new ArrayList<T>());
+		final CountDownLatch done = new CountDownLatch(1);
+		final int chunk,cancelAfter;
+		volatile Throwable error = null;
+		volatile boolean completed = false;
+		Subscription subscription;
+		int outstanding = 0;
+		public CollectingSubscriber(int chunk,int cancelAfter){
+			this.chunk = chunk;
+			this.cancelAfter = cancelAfter;
+		}
+		@Override
+		public void onSubscribe(Subscription s) {
+			subscription = s;
+			outstanding = chunk;
+			s.request(chunk);
+		}
+		@Override
+		public void onNext(T t) {
+			received.add(t);
+			if(received.size() == cancelAfter){
+				subscription.cancel();
+				done.countDown();
+				return;
+			}
+			if(--outstanding == 0){
+				outstanding = chunk;
+				subscription.request(chunk);
+			}
+		}
+		@Override
+		public void onError(Throwable t) {
+			error = t;
+			done.countDown();
+		}
+		@Override
+		public void onComplete() {
+			completed = true;
+			done.countDown();
+		}
+	}
+	public void testPublisher(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"publisher"+Util.randomHexString(10));
+		HashMap<Long,Long> m = new HashMap<Long,Long>();
+		for(long i=0;i<5000;i++)
+			m.put(i, 2*i);
+		asm.putAll(m);
+
+		CollectingSubscriber<Entry<Long,Long>> all = new CollectingSubscriber<Entry<Long,Long>>(7,-1);
+		asm.publisher(100,50).subscribe(all);
+		assertTrue(all.done.await(60, TimeUnit.SECONDS));
+		assertTrue(all.completed && all.error == null);
+		assertTrue(all.received.size() == 5000);
+		for(int i=0;i<5000;i++)
+			assertTrue(all.received.get(i).getKey() == i && all.received.get(i).getValue() == 2*i);
+
+		CollectingSubscriber<Entry<Long,Long>> sub = new CollectingSubscriber<Entry<Long,Long>>(1000,-1);
+		asm.subMap(100l, 200l).publisher().subscribe(sub);
+		assertTrue(sub.done.await(60, TimeUnit.SECONDS));
+		assertTrue(sub.received.size() == 100 && sub.received.get(0).getKey() == 100);
+
+		CollectingSubscriber<Entry<Long,Long>> cancelled = new CollectingSubscriber<Entry<Long,Long>>(3,10);
+		asm.publisher(10,10).subscribe(cancelled);
+		assertTrue(cancelled.done.await(60, TimeUnit.SECONDS));
+		Thread.sleep(300);
+		assertTrue(cancelled.received.size() == 10 && !cancelled.completed);
+
+		List<Long> keys = new ArrayList<Long>();
+		for(long i=-10;i<100;i+=2)
+			keys.add(i);
+		CollectingSubscriber<Entry<Long,Long>> batch = new CollectingSubscriber<Entry<Long,Long>>(5,-1);
+		asm.batchPublisher(keys, 8).subscribe(batch);
+		assertTrue(batch.done.await(60, TimeUnit.SECONDS));
+		assertTrue(batch.completed && batch.received.size() == 50);
+
+		CollectingSubscriber<Entry<Long,Long>> invalid = new CollectingSubscriber<Entry<Long,Long>>(0,-1);
+		asm.publisher().subscribe(invalid);
+		assertTrue(invalid.done.await(60, TimeUnit.SECONDS));
+		assertTrue(invalid.error instanceof IllegalArgumentException);
+	}
+	public void testPooledScanners(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException, ExecutionException{
+		final AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"pooled"+Util.randomHexString(10));
+		for(long i=0;i<100;i++)
+			asm.put(i, i+1);
+		// each thread reuses its own point Scanner
+		List<CompletableFuture<Boolean>> readers = new ArrayList<CompletableFuture<Boolean>>();
+		for(int t=0;t<4;t++){
+			readers.add(CompletableFuture.supplyAsync(new Supplier<Boolean>(){
+				@Override
+				public Boolean get() {
+					for(int j=0;j<5;j++){
+						for(long i=0;i<100;i++){
+							if(asm.get(i) != i+1)
+								return false;
+						}
+					}
+					return asm.get(1000l) == null;
+				}
+			}));
+		}
+		for(CompletableFuture<Boolean> f : readers)
+			assertTrue(f.get());
+		AccumuloSortedMap<Long,Long> sub = asm.subMap(10l, 20l);
+		assertTrue(sub.get(15l) == 16 && sub.get(15l) == 16 && sub.get(25l) == null);
+		// the pooled Scanner must follow the recreated table
+		asm.setClearable(true).clear();
+		assertTrue(asm.get(5l) == null);
+		asm.put(5l, 50l);
+		assertTrue(asm.get(5l) == 50 && sub.get(5l) == null);
+		asm.put(15l, 150l);
+		assertTrue(sub.get(15l) == 150);
+	}
+	/**
+	 * mock Scanners keep reading a deleted table instead of failing, so this runs on MiniAccumuloCluster
+	 */
+	public void testRecreatedTable(Connector c) throws AccumuloException, AccumuloSecurityException, TableNotFoundException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"recreated"+Util.randomHexString(10));
+		asm.put(5l, 50l);
+		assertTrue(asm.get(5l) == 50);
+		// the pooled Scanner must follow a table recreated by another client
+		c.tableOperations().delete(asm.getTable());
+		AccumuloSortedMap<Long,Long> otherClient = new AccumuloSortedMap(c,asm.getTable());
+		otherClient.put(5l, 500l);
+		assertTrue(asm.get(5l) == 500);
+	}
+	public void testConcurrentWrites(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException{
+		final AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"striped"+Util.randomHexString(10));
+		asm.setWriteStripes(3);
+		assertTrue(asm.getWriteStripes() == 3);
+		Thread[] writers = new Thread[6];
+		for(int t=0;t<writers.length;t++){
+			final long offset = 100*t;
+			writers[t] = new Thread(){
+				@Override
+				public void run(){
+					for(long i=0;i<100;i++)
+						asm.put(offset+i, offset+i+1);
+					for(long i=0;i<100;i+=2)
+						asm.remove(offset+i);
+				}
+			};
+			writers[t].start();
+		}
+		for(Thread t : writers)
+			t.join();
+		assertTrue(asm.size() == 300);
+		for(long i=0;i<600;i++)
+			assertTrue(i % 2 == 0 ? asm.get(i) == null : asm.get(i) == i+1);
+		// back to a single writer, pending edits are flushed
+		asm.setWriteStripes(1);
+		asm.put(0l, 1l);
+		assertTrue(asm.get(0l) == 1 && asm.size() == 301);
+	}
+	public static class CountingSerde extends JavaSerializationSerde{
+		static final AtomicInteger deserialized = new AtomicInteger();
+		@Override
+		public Object deserialize(byte[] b){
+			deserialized.incrementAndGet();
+			return super.deserialize(b);
+		}
+	}
+	public void testLazyDeserialization(Connector c) throws AccumuloException, AccumuloSecurityException{
+		AccumuloSortedMap<Long,String> asm = new AccumuloSortedMap(c,"lazy"+Util.randomHexString(10));
+		asm.setValueSerde(new CountingSerde());
+		for(long i=0;i<100;i++)
+			asm.put(i, "value"+i);
+		CountingSerde.deserialized.set(0);
+		// key only filters and transforms never deserialize values on the tablet server
+		Map<Long,String> found = new HashMap<Long,String>(asm.regexKeyFilter("^5$"));
+		assertTrue(found.size() == 1 && found.get(5l).equals("value5"));
+		assertTrue(asm.keyToKeyMap().get(7l) == 7);
+		assertTrue(CountingSerde.deserialized.get() < 10);
+		// a value regex still sees the values
+		assertTrue(new HashMap<Long,String>(asm.regexFilter("^1", "9$")).keySet().equals(Collections.singleton(19l)));
+		assertTrue(asm.regexValueFilter("value4").size() == 11);
+	}
+	public void testContainsValue(Connector c) throws AccumuloException, AccumuloSecurityException, TableNotFoundException{
+		AccumuloSortedMap<Long,Long> asm = new AccumuloSortedMap(c,"containsvalue"+Util.randomHexString(10));
+		for(long i=0;i<100;i++)
+			asm.put(i, 2*i);
+		TreeSet<Text> splits = new TreeSet<Text>();
+		splits.add(new Text(asm.getKeySerde().serialize(50l)));
+		c.tableOperations().addSplits(asm.getTable(), splits);
+		assertTrue(asm.containsValue(0l) && asm.containsValue(198l) && asm.values().contains(120l));
+		assertFalse(asm.containsValue(3l) || asm.containsValue(200l));
+		// submaps and derived maps only match their own values
+		assertTrue(asm.subMap(10l, 20l).containsValue(30l));
+		assertFalse(asm.subMap(10l, 20l).containsValue(40l));
+		assertTrue(asm.regexValueFilter("^1").containsValue(18l));
+		assertFalse(asm.regexValueFilter("^1").containsValue(20l));
+		assertFalse(new EmptyAccumuloSortedMap().containsValue(0l));
+	}
+	public void testValueIndex(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException, ExecutionException{
+		AccumuloSortedMap<Long,String> asm = new AccumuloSortedMap(c,"indexed"+Util.randomHexString(10));
+		asm.setKeySerde(new LongKeySerde());
+		for(long i=0;i<10;i++)
+			asm.put(i, "v"+(i%3));
+		// existing entries are indexed when the index is added
+		asm.addValueIndex().addValueIndex("len", new Function<String,Long>(){
+			@Override
+			public Long apply(String v) {
+				return (long) v.length();
+			}
+		}, new LongKeySerde());
+		assertTrue(asm.isIndexed() && asm.getValueIndexNames().size() == 2);
+		assertTrue(asm.keysForValue("v1").equals(new TreeSet<Long>(Arrays.asList(1l,4l,7l))));
+		assertTrue(asm.keysForValue("none").isEmpty());
+		// writes move index entries
+		asm.put(1l, "v2");
+		asm.remove(4l);
+		asm.putAsync(20l, "v1").get();
+		Map<Long,String> m = new HashMap<Long,String>();
+		m.put(7l, "long value");
+		m.put(30l, "abcd");
+		asm.putAll(m);
+		assertTrue(asm.keysForValue("v1").equals(Collections.singleton(20l)));
+		assertTrue(asm.keysForValue("v2").equals(new TreeSet<Long>(Arrays.asList(1l,2l,5l,8l))));
+		assertTrue(asm.keysForIndex("len", 10l).equals(Collections.singleton(7l)));
+		assertTrue(asm.keysForIndexRange("len", 3l, null).equals(new TreeSet<Long>(Arrays.asList(7l,30l))));
+		assertTrue(asm.keysForIndexRange("len", null, 3l).size() == 9);
+		assertTrue(asm.getBatch(asm.keysForIndexRange("len", 4l, 5l)).equals(Collections.singletonMap(30l, "abcd")));
+		// clear() keeps the indexes, empty
+		asm.setClearable(true).clear();
+		assertTrue(asm.isIndexed() && asm.keysForValue("v2").isEmpty());
+		asm.put(1l, "v2");
+		assertTrue(asm.keysForValue("v2").equals(Collections.singleton(1l)));
+		asm.dropValueIndex("len");
+		assertFalse(c.tableOperations().exists(asm.getTable()+AccumuloSortedMap.INDEX_TABLE_INFIX+"len"));
+	}
+	public void testResolveAll(Connector c) throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
+		String factName = "fkfactory"+Util.randomHexString(10);
+		AccumuloSortedMapFactory fact = new AccumuloSortedMapFactory(c,factName);
+		AccumuloSortedMap<Long,String> users = fact.makeMap("users");
+		AccumuloSortedMap<Long,String> groups = fact.makeMap("groups");
+		AccumuloSortedMap<Long,String> plain = new AccumuloSortedMap(c,"fkplain"+Util.randomHexString(10));
+		List<ForeignKey> fks = new ArrayList<ForeignKey>();
+		for(long i=0;i<50;i++){
+			users.put(i, "user"+i);
+			fks.add(users.makeForeignKey(i));
+			fks.add(groups.makeForeignKey(i % 5));
+		}
+		for(long i=0;i<5;i++)
+			groups.put(i, "group"+i);
+		plain.put(1l, "plain1");
+		fks.add(plain.makeForeignKey(1l));
+		fks.add(users.makeForeignKey(1000l));
+		fks.add(new ForeignKey(c,factName,"nomap",1l));
+		Map<ForeignKey,Object> resolved = ForeignKey.resolveAll(fks);
+		// 50 users, 5 distinct groups, 1 plain. missing keys and maps are left out
+		assertTrue(resolved.size() == 56);
+		assertTrue(resolved.get(users.makeForeignKey(7l)).equals("user7"));
+		assertTrue(resolved.get(new ForeignKey(null,factName,"groups",3l)).equals("group3"));
+		assertTrue(resolved.get(plain.makeForeignKey(1l)).equals("plain1"));
+		assertFalse(resolved.containsKey(users.makeForeignKey(1000l)));
+		assertTrue(users.makeForeignKey(7l).equals(users.makeForeignKey(7l)) && !users.makeForeignKey(7l).equals(groups.makeForeignKey(7l)));
+		// the cached handles see later writes
+		assertTrue(users.makeForeignKey(1000l).resolve() == null);
+		users.put(1000l, "user1000");
+		assertTrue(users.makeForeignKey(1000l).resolve().equals("user1000"));
+		assertTrue(plain.resolveAll(Arrays.asList(new ForeignKey(null,null,plain.getTable(),1l))).size() == 1);
+		// a missing map is remembered until the factory TTL expires, instead of refreshing on every miss
+		ForeignKey later = new ForeignKey(c,factName,"later",1l);
+		assertTrue(later.resolve() == null);
+		fact.makeMap("later").put(1l, "later1");
+		assertTrue(later.resolve() == null);
+		ForeignKey.invalidateCache(c);
+		assertTrue(later.resolve().equals("later1"));
+		ForeignKey.invalidateCache(c);
+	}
+	public void testForeignKeyJoin(Connector c) throws AccumuloException, AccumuloSecurityException{
+		// ForeignKeys to maps not made by a factory resolve with the default serdes
+		AccumuloSortedMap<Long,String> users = new AccumuloSortedMap(c,"joinusers"+Util.randomHexString(10));
+		AccumuloSortedMap<Long,Object> orders = new AccumuloSortedMap(c,"joinorders"+Util.randomHexString(10));
+		orders.setKeySerde(new LongKeySerde());
+		Map<Long,String> expected = new TreeMap<Long,String>();
+		for(long i=0;i<100;i++){
+			users.put(i, "user"+i);
+			if(i < 50){
+				orders.put(i, users.makeForeignKey(i));
+				expected.put(i, "user"+i);
+			}
+		}
+		// a key that goes backwards, a missing key and a plain value
+		orders.put(60l, users.makeForeignKey(5l));
+		expected.put(60l, "user5");
+		orders.put(61l, users.makeForeignKey(1000l));
+		expected.put(61l, null);
+		orders.put(62l, "plain");
+		expected.put(62l, "plain");
+		for(boolean mergeJoin : new boolean[]{false,true}){
+			AccumuloSortedMap<Long,String> joined = orders.joinForeignKeys(7, mergeJoin);
+			Map<Long,String> found = new TreeMap<Long,String>();
+			for(Entry<Long,String> e : joined.entrySet())
+				found.put(e.getKey(), e.getValue());
+			assertTrue(found.equals(expected));
+			assertTrue(joined.get(10l).equals("user10") && joined.get(61l) == null);
+			assertTrue(joined.getBatch(Arrays.asList(3l,60l)).get(60l).equals("user5"));
+			// batches and streams are resolved a page at a time
+			assertTrue(new TreeMap<Long,String>(joined.getBatch(expected.keySet())).equals(expected));
+			Map<Long,String> streamed = new TreeMap<Long,String>();
+			for(Iterator<Entry<Long,String>> it = joined.stream().iterator();it.hasNext();){
+				Entry<Long,String> e = it.next();
+				streamed.put(e.getKey(), e.getValue());
+			}
+			assertTrue(streamed.equals(expected));
+			Map<Long,String> sub = new TreeMap<Long,String>();
+			for(Entry<Long,String> e : joined.subMap(45l, 61l).entrySet())
+				sub.put(e.getKey(), e.getValue());
+			assertTrue(sub.size() == 6 && sub.get(60l).equals("user5"));
+			assertTrue(joined.containsValue("user49") && !joined.containsValue("user50"));
+		}
+	}
+	public void testFactoryMetadataCache(Connector c) throws AccumuloException, AccumuloSecurityException, InstantiationException, IllegalAccessException, ClassNotFoundException{
+		String factName = "cachedfactory"+Util.randomHexString(10);
+		AccumuloSortedMapFactory f1 = new AccumuloSortedMapFactory(c,factName);
+		AccumuloSortedMapFactory f2 = new AccumuloSortedMapFactory(c,factName);
+		f2.refresh();
+		f1.makeMap("m1").put(1, 2);
+		f1.addMapSpecificProperty("m1", "x", "1");
+		// f1 sees its own writes. f2's cache predates them until refresh()
+		assertTrue(f1.containsMap("m1") && "1".equals(f1.getMapSpecificProperty("m1", "x")));
+		assertFalse(f2.containsMap("m1"));
+		// makeMap() on a stale cache must reuse m1's table, not create a new one
+		assertTrue(f2.makeMap("m1").getTable().equals(f1.makeMap("m1").getTable()));
+		f2.refresh();
+		assertTrue(f2.containsMap("m1") && "1".equals(f2.getMapSpecificProperty("m1", "x")));
+		assertTrue(f2.getMapNames().equals(Collections.singleton("m1")));
+		assertTrue(f2.makeMap("m1").get(1).equals(2l));
+		// removals are persisted
+		f1.removeMapSpecificProperty("m1", "x");
+		assertTrue(f1.getMapSpecificProperty("m1", "x") == null);
+		assertTrue(new AccumuloSortedMapFactory(c,factName).getMapSpecificProperty("m1", "x") == null);
+		// without the cache, every lookup reads the metadata table
+		f2.setMetadataCacheTtlMs(0);
+		f1.addMapSpecificProperty("m2", "y", "2");
+		assertTrue("2".equals(f2.getMapSpecificProperty("m2", "y")) && f2.containsMap("m2"));
+		// makeMap() writes the new table name through the cache
+		f1.makeMap("m2");
+		assertTrue(f1.getMapSpecificProperty("m2", AccumuloSortedMapFactory.MAP_PROPERTY_TABLE_NAME) != null);
+		// property writes through a stale cache keep other clients' properties
+		AccumuloSortedMapFactory f3 = new AccumuloSortedMapFactory(c,factName);
+		f1.refresh();
+		f3.addMapSpecificProperty("m2", "b", "3");
+		f1.addMapSpecificProperty("m2", "a", "4");
+		AccumuloSortedMapFactory f4 = new AccumuloSortedMapFactory(c,factName);
+		assertTrue("3".equals(f4.getMapSpecificProperty("m2", "b")) && "4".equals(f4.getMapSpecificProperty("m2", "a")));
+		assertTrue("2".equals(f4.getMapSpecificProperty("m2", "y")));
+	}
+	public void testAsyncWrites(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException, ExecutionException{
+		final AccumuloSortedMap<Number,Number> asm = new AccumuloSortedMap(c,"async"+Util.randomHexString(10));
+		asm.setGroupCommit(20, 1024);
+		final List<CompletableFuture<Void>> futures = Collections.synchronizedList(new ArrayList<CompletableFuture<Void>>());
+		Thread[] writers = new Thread[4];
+		for(int t=0;t<writers.length;t++){
+			final int offset = 100*t;
+			writers[t] = new Thread(){
+				@Override
+				public void run() {
+					for(long i=0;i<100;i++){
+						futures.add(asm.putAsync(offset+i, i));
+					}
+				}
+			};
+			writers[t].start();
+		}
+		for(Thread t : writers)
+			t.join();
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+		assertTrue(asm.size() == 400);
+		assertTrue(asm.get(305).equals(5l));
+		asm.removeAsync(305).get();
+		assertNull(asm.get(305));
+		// counted and indexed async writes update the size and indexes once per group
+		AccumuloSortedMap<Long,Long> counted = new AccumuloSortedMap(c,"asynccounted"+Util.randomHexString(10));
+		counted.setCounted(true);
+		counted.addValueIndex();
+		counted.setGroupCommit(100, 1 << 20);
+		futures.clear();
+		for(long i=0;i<200;i++)
+			futures.add(counted.putAsync(i, i % 10));
+		CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+		assertTrue(counted.size() == 200);
+		assertTrue(counted.keysForValue(3l).size() == 20);
+		counted.removeAsync(3l).get();
+		assertTrue(counted.size() == 199 && counted.keysForValue(3l).size() == 19);
+	}
+	public void testConditionalWrites(Connector c) throws AccumuloException, AccumuloSecurityException, InterruptedException{
+		final AccumuloSortedMap<String,Long> asm = new AccumuloSortedMap(c,"conditional"+Util.randomHexString(10));
+		assertNull(asm.putIfAbsent("a", 1l));
+		assertTrue(asm.putIfAbsent("a", 2l).equals(1l));
+		assertFalse(asm.replace("a", 2l, 3l));
+		assertTrue(asm.replace("a", 1l, 3l));
+		assertTrue(asm.get("a").equals(3l));
+		assertTrue(asm.replace("a", 4l).equals(3l));
+		assertNull(asm.replace("b", 4l));
+		assertFalse(asm.containsKey("b"));
+		assertFalse(asm.remove("a", 3l));
+		assertTrue(asm.remove("a", 4l));
+		assertFalse(asm.containsKey("a"));
+		assertTrue(asm.compareAndSet("a", null, 5l));
+		assertFalse(asm.compareAndSet("a", null, 6l));
+		
+		// concurrent merges don't lose updates
+		Thread[] counters = new Thread[4];
+		for(int t=0;t<counters.length;t++){
+			counters[t] = new Thread(){
+				@Override
+				public void run() {
+					for(int i=0;i<25;i++){
+						asm.merge("counter", 1l, new BiFunction<Long,Long,Long>(){
+							@Override
+							public Long apply(Long a, Long b) {
+								return a+b;
+							}
+						});
+					}
+				}
+			};
+			counters[t].start();
+		}
+		for(Thread t : counters)
+			t.join();
+		assertTrue(asm.get("counter").equals(100l));
+	}
+	/**
+	 * runs the tests that need features MockInstance doesn't support, like ConditionalWriter, 
+	 * and checks bulk import against real tablet servers.
+	 * MiniAccumuloCluster 1.7 only runs on java 8.
+	 */
+	public void testMiniAccumuloCluster() throws Exception{
+		if(!System.getProperty("java.specification.version").equals("1.8")){
+			System.out.println("skipping MiniAccumuloCluster tests, which require java 8");
+			return;
+		}
+		File dir = Files.createTempDirectory("minicluster").toFile();
+		MiniAccumuloCluster mac = new MiniAccumuloCluster(dir, "secret");
+		mac.start();
+		try{
+			Connector c = new ZooKeeperInstance(mac.getInstanceName(), mac.getZooKeepers()).getConnector("root", new PasswordToken("secret"));
+			testConditionalWrites(c);
+			testBulkImport(c);
+			testNearCache(c);
+			testRecreatedTable(c);
+		}
+		finally{
+			mac.stop();
+		}
 	}
 	public void testEmptyMap(){
 		EmptyAccumuloSortedMap em = new EmptyAccumuloSortedMap();
 		assertTrue(em.size() == 0);
 		assertTrue(em.get(123) == null);
+		assertTrue(em.distinctValues() == 0);
 		
 		try{
 			em.firstKey();
@@ -319,10 +1236,31 @@ extends TestCase
 //			Connector c = new ZooKeeperInstance("t0","zk:2181").getConnector("root", new PasswordToken("secret"));
 			testLinks(c);
 			testFixedPointSerde(c);
+			testPrimitiveSerdes(c);
 			testMapFactory(c);
 			testMultiMap(c,9999);
 			testMultiMap(c,-1);
 			testEmptyMap();
+			testBatchLookup(c);
+			testNearCache(c);
+			testAsyncWrites(c);
+			testParallelImport(c);
+			testBulkImport(c);
+			testDistinctCount(c);
+			testQuantiles(c);
+			testTopK(c);
+			testFirstLastKey(c);
+			testCountedMap(c);
+			testStreams(c);
+			testPublisher(c);
+			testPooledScanners(c);
+			testConcurrentWrites(c);
+			testLazyDeserialization(c);
+			testContainsValue(c);
+			testValueIndex(c);
+			testResolveAll(c);
+			testForeignKeyJoin(c);
+			testFactoryMetadataCache(c);
 
 			
 			AccumuloSortedMap asm = new AccumuloSortedMap(c,"mytable"+Util.randomHexString(10));
@@ -382,6 +1320,15 @@ extends TestCase
 			//verfiy sample is the same
 			assertTrue(checksum == checksum2);
 			System.out.println("checksum = " + checksum);
+			assertTrue(asm.sample("abc",from,to,-1,-1,SamplingFilter.HASH_SHA256).checksum() == checksum);
+			// murmur samples are reproducible, and adjacent fractions partition the map
+			int below = asm.sample("abc",0,from,-1,-1,SamplingFilter.HASH_MURMUR).size();
+			int middle = asm.sample("abc",from,to,-1,-1,SamplingFilter.HASH_MURMUR).size();
+			int above = asm.sample("abc",to,1,-1,-1,SamplingFilter.HASH_MURMUR).size();
+			assertTrue(below + middle + above == asm.size());
+			assertTrue(asm.sample("abc",from,to,-1,-1,SamplingFilter.HASH_MURMUR).checksum() == asm.sample(new Sampler("abc",from,to,-1,-1,SamplingFilter.HASH_MURMUR)).checksum());
+			int tenth = asm.sample(.1).size();
+			assertTrue(tenth > asm.size()/20 && tenth < asm.size()*3/20);
 			
 			
 			